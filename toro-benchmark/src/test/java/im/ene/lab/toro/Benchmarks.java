@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro;
+
+import android.support.annotation.NonNull;
+import org.objenesis.Objenesis;
+import org.objenesis.ObjenesisStd;
+
+/**
+ * Shared setup of Toro benchmarks.
+ */
+final class Benchmarks {
+
+  private static final Objenesis objenesis = new ObjenesisStd();
+
+  private Benchmarks() {
+    throw new AssertionError("Not supported");
+  }
+
+  /**
+   * @param name name of a {@link Toro.Strategies} field
+   */
+  @NonNull static ToroStrategy strategy(@NonNull String name) {
+    try {
+      return (ToroStrategy) Toro.Strategies.class.getField(name).get(null);
+    } catch (NoSuchFieldException | IllegalAccessException e) {
+      throw new IllegalArgumentException("Unknown strategy: " + name, e);
+    }
+  }
+
+  /**
+   * @return an instance of the class, without calling its constructor. For Android classes whose
+   * constructor can't run against the mockable Android jar, eg. RecyclerView.
+   */
+  @NonNull static <T> T newInstance(@NonNull Class<T> type) {
+    return objenesis.newInstance(type);
+  }
+}
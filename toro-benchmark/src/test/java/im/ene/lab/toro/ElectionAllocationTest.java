@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro;
+
+import java.util.Collection;
+import java.util.Map;
+import org.junit.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A steady state election pass doesn't allocate: {@link ElectionBenchmark} is run briefly with
+ * every built-in Strategy, and its {@code gc.alloc.rate.norm} must stay under one byte per pass.
+ * Runs with regular test runs, unlike {@link ElectionBenchmarkSuite}.
+ */
+public class ElectionAllocationTest {
+
+  // JMH's own bookkeeping, amortized over the passes of an iteration, is a fraction of a byte
+  private static final double MAX_BYTES_PER_PASS = 1.0;
+
+  @Test public void electionPassDoesNotAllocate() throws RunnerException {
+    Options options = new OptionsBuilder()  //
+        .include(ElectionBenchmark.class.getName())
+        .param("candidates", "10", "100")
+        // Gradle's test worker doesn't expose its classpath to a forked JVM, run in this one
+        .forks(0)
+        .warmupIterations(3)
+        .warmupTime(TimeValue.milliseconds(200))
+        .measurementIterations(3)
+        .measurementTime(TimeValue.milliseconds(200))
+        .addProfiler(GCProfiler.class)
+        .build();
+    Collection<RunResult> results = new Runner(options).run();
+    assertFalse("No benchmark ran", results.isEmpty());
+
+    for (RunResult result : results) {
+      Result allocation = allocationOf(result);
+      String label = result.getParams().getParam("strategy") + ", "
+          + result.getParams().getParam("candidates") + " candidates";
+      assertTrue("No allocation rate for " + label, allocation != null);
+      assertTrue(label + " allocates " + allocation.getScore() + " bytes per pass",
+          allocation.getScore() < MAX_BYTES_PER_PASS);
+    }
+  }
+
+  private static Result allocationOf(RunResult result) {
+    // GCProfiler prefixes its labels with a middle dot
+    for (Map.Entry<String, Result> entry : result.getSecondaryResults().entrySet()) {
+      if (entry.getKey().endsWith("gc.alloc.rate.norm")) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+}
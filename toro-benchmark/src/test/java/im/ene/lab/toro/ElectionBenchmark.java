@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro;
+
+import android.support.v7.widget.RecyclerView;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One election pass, as run when a registered View stops scrolling: {@link
+ * ToroScrollListener#onScrollStateChanged(RecyclerView, int)} with every attached player being a
+ * candidate. The View scrolls a bit between passes, so the winner changes from pass to pass.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ElectionBenchmark {
+
+  private static final int SCROLL_STEP = 7;
+
+  @Param({ "10", "100", "1000" }) int candidates;
+
+  @Param({
+      "MOST_VISIBLE_TOP_DOWN", "MOST_VISIBLE_TOP_DOWN_KEEP_LAST", "FIRST_PLAYABLE_TOP_DOWN",
+      "FIRST_PLAYABLE_TOP_DOWN_KEEP_LAST"
+  }) String strategy;
+
+  private FakeGeometry geometry;
+  private RecyclerView parent;
+  private ToroScrollListener listener;
+  private int scrollY = 0;
+
+  @Setup public void setUp() {
+    Toro.init(null);
+    Toro.setStrategy(Benchmarks.strategy(strategy));
+
+    geometry = new FakeGeometry(candidates);
+    ToroGeometry.setProvider(geometry);
+
+    parent = Benchmarks.newInstance(RecyclerView.class);
+    listener = new ToroScrollListener(new VideoPlayerManagerImpl());
+    Toro.sInstance.mListeners.put(parent, listener);
+    for (int i = 0; i < candidates; i++) {
+      listener.onPlayerAttached(new FakePlayer(i));
+    }
+  }
+
+  @TearDown public void tearDown() {
+    listener.clearPlayers();
+    Toro.sInstance.mListeners.remove(parent);
+    ToroGeometry.setProvider(null);
+  }
+
+  @Benchmark public void onScrollStateChanged() {
+    scrollY = (scrollY + SCROLL_STEP) % FakeGeometry.ITEM_SIZE;
+    geometry.scrollTo(scrollY);
+    listener.onScrollStateChanged(parent, RecyclerView.SCROLL_STATE_IDLE);
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs every Toro benchmark, reporting time per pass and, through {@link GCProfiler}, bytes
+ * allocated per pass ({@code gc.alloc.rate.norm}). Skipped unless Gradle is run with {@code
+ * -Pbenchmark}, see this module's build.gradle.
+ */
+public class ElectionBenchmarkSuite {
+
+  @Test public void run() throws RunnerException {
+    Assume.assumeTrue("Benchmarks run with -Pbenchmark", Boolean.getBoolean("toro.benchmark"));
+
+    Options options = new OptionsBuilder()  //
+        .include(ElectionBenchmark.class.getName())
+        .include(StrategyBenchmark.class.getName())
+        // Gradle's test worker doesn't expose its classpath to a forked JVM, run in this one
+        .forks(0)
+        .addProfiler(GCProfiler.class)
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro;
+
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewParent;
+import java.util.List;
+
+/**
+ * Geometry of a vertical list of {@link FakePlayer}s, item {@code i} at {@code i * ITEM_SIZE}.
+ * The viewport is as tall as the whole list: every candidate is visible, the first and last ones
+ * partially once scrolled. Doesn't allocate.
+ */
+final class FakeGeometry implements ToroGeometry.Provider {
+
+  static final int ITEM_SIZE = 100;
+
+  private final int viewportSize;
+  private int scrollY = 0;
+
+  FakeGeometry(int itemCount) {
+    this.viewportSize = itemCount * ITEM_SIZE;
+  }
+
+  void scrollTo(int scrollY) {
+    this.scrollY = scrollY;
+  }
+
+  private int topOf(@NonNull ToroPlayer player) {
+    return player.getPlayOrder() * ITEM_SIZE - scrollY;
+  }
+
+  private float fractionOf(@NonNull ToroPlayer player) {
+    int top = topOf(player);
+    int visible = Math.min(top + ITEM_SIZE, viewportSize) - Math.max(top, 0);
+    return visible <= 0 ? 0.f : (float) visible / ITEM_SIZE;
+  }
+
+  @Override public void findVisiblePlayers(@NonNull RecyclerView parent,
+      @NonNull ToroScrollListener listener, @NonNull List<ToroPlayer> out) {
+    final List<ToroPlayer> registered = listener.getPlayers();
+    for (int i = 0, size = registered.size(); i < size; i++) {
+      if (fractionOf(registered.get(i)) > 0.f) {
+        out.add(registered.get(i));
+      }
+    }
+  }
+
+  @Override public boolean allowsToPlay(@NonNull ToroPlayer player, @Nullable ViewParent parent) {
+    return fractionOf(player) > 0.f;
+  }
+
+  @Override
+  public float visibleAreaOffset(@NonNull ToroPlayer player, @Nullable ViewParent parent) {
+    return fractionOf(player);
+  }
+
+  @Override public void getVisibleRect(@NonNull ToroPlayer player, @NonNull Rect out) {
+    // Rect's methods are no-op in the mockable Android jar, set its fields
+    int top = topOf(player);
+    out.left = 0;
+    out.top = Math.max(top, 0);
+    out.right = ITEM_SIZE;
+    out.bottom = Math.min(top + ITEM_SIZE, viewportSize);
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.View;
+import im.ene.lab.toro.media.Cineer;
+import im.ene.lab.toro.media.PlaybackException;
+
+/**
+ * A {@link ToroPlayer} without media. It plays instantly and never fails. Its geometry comes from
+ * the installed {@link ToroGeometry.Provider}, the same way a ToroViewHolder's does.
+ */
+final class FakePlayer implements ToroPlayer {
+
+  // Never measured, the geometry provider stands in for Views
+  private static final View VIEW = Benchmarks.newInstance(View.class);
+
+  private final int order;
+  private final String mediaId;
+  private boolean playing = false;
+  private long position = 0;
+
+  FakePlayer(int order) {
+    this.order = order;
+    this.mediaId = "media-" + order;
+  }
+
+  @Override public void preparePlayer(boolean playWhenReady) {
+    playing = playWhenReady;
+  }
+
+  @Override public void start() {
+    playing = true;
+  }
+
+  @Override public void pause() {
+    playing = false;
+  }
+
+  @Override public void stop() {
+    playing = false;
+    position = 0;
+  }
+
+  @Override public void releasePlayer() {
+    playing = false;
+  }
+
+  @Override public long getDuration() {
+    return 60_000;
+  }
+
+  @Override public long getCurrentPosition() {
+    return position;
+  }
+
+  @Override public void seekTo(long pos) {
+    position = pos;
+  }
+
+  @Override public boolean isPlaying() {
+    return playing;
+  }
+
+  @Override public boolean wantsToPlay() {
+    return true;
+  }
+
+  @Override public boolean isLoopAble() {
+    return false;
+  }
+
+  @Override public float visibleAreaOffset() {
+    return ToroUtil.visibleAreaOffset(this, null);
+  }
+
+  @Nullable @Override public String getMediaId() {
+    return mediaId;
+  }
+
+  @Override public int getPlayOrder() {
+    return order;
+  }
+
+  @NonNull @Override public View getPlayerView() {
+    return VIEW;
+  }
+
+  @Override public void onActivityActive() {
+  }
+
+  @Override public void onActivityInactive() {
+  }
+
+  @Override public void onVideoPreparing() {
+  }
+
+  @Override public void onVideoPrepared(Cineer mp) {
+  }
+
+  @Override public void onPlaybackStarted() {
+  }
+
+  @Override public void onPlaybackPaused() {
+  }
+
+  @Override public void onPlaybackCompleted() {
+  }
+
+  @Override public void onBuffering() {
+  }
+
+  @Override public boolean onPlaybackError(Cineer mp, PlaybackException error) {
+    return false;
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro;
+
+import android.graphics.Rect;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link Toro.Strategies} alone, on a prepared set of candidates: {@link
+ * ToroSnapshotStrategy#findBestPlayer(ElectionSnapshot)} as used by election, and the list based
+ * {@link ToroStrategy#findBestPlayer(List)} which measures each candidate by itself.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StrategyBenchmark {
+
+  @Param({ "10", "100", "1000" }) int candidates;
+
+  @Param({
+      "MOST_VISIBLE_TOP_DOWN", "MOST_VISIBLE_TOP_DOWN_KEEP_LAST", "FIRST_PLAYABLE_TOP_DOWN",
+      "FIRST_PLAYABLE_TOP_DOWN_KEEP_LAST"
+  }) String strategy;
+
+  private ToroSnapshotStrategy snapshotStrategy;
+  private ToroStrategy listStrategy;
+  private ElectionSnapshot snapshot;
+  private List<ToroPlayer> players;
+
+  @Setup public void setUp() {
+    listStrategy = Benchmarks.strategy(strategy);
+    snapshotStrategy = LegacyStrategyAdapter.adapt(listStrategy);
+
+    FakeGeometry geometry = new FakeGeometry(candidates);
+    // Half scrolled: first candidate is half visible, the second one wins
+    geometry.scrollTo(FakeGeometry.ITEM_SIZE / 2);
+    ToroGeometry.setProvider(geometry);
+
+    snapshot = new ElectionSnapshot();
+    players = new ArrayList<>(candidates);
+    Rect rect = new Rect();
+    for (int i = 0; i < candidates; i++) {
+      ToroPlayer player = new FakePlayer(i);
+      geometry.getVisibleRect(player, rect);
+      snapshot.add(player, i == 0, rect, geometry.visibleAreaOffset(player, null));
+      players.add(player);
+    }
+  }
+
+  @TearDown public void tearDown() {
+    snapshot.clear();
+    ToroGeometry.setProvider(null);
+  }
+
+  @Benchmark public ToroPlayer snapshot() {
+    return snapshotStrategy.findBestPlayer(snapshot);
+  }
+
+  @Benchmark public ToroPlayer list() {
+    return listStrategy.findBestPlayer(players);
+  }
+}
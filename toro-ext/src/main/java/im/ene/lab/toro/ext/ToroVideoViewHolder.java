@@ -19,6 +19,7 @@ package im.ene.lab.toro.ext;
 import android.support.annotation.CallSuper;
 import android.support.annotation.NonNull;
 import android.view.View;
+import im.ene.lab.toro.ToroPlayer;
 import im.ene.lab.toro.media.Cineer;
 import im.ene.lab.toro.media.PlaybackException;
 import im.ene.lab.toro.player.widget.ToroVideoView;
@@ -26,7 +27,8 @@ import im.ene.lab.toro.player.widget.ToroVideoView;
 /**
  * Created by eneim on 6/11/16.
  */
-public abstract class ToroVideoViewHolder extends BasePlayerViewHolder {
+public abstract class ToroVideoViewHolder extends BasePlayerViewHolder
+    implements ToroPlayer.PreparedPlayer {
 
   protected final ToroVideoView mVideoView;
   private boolean mPlayable = true; // normally true
@@ -39,6 +41,7 @@ public abstract class ToroVideoViewHolder extends BasePlayerViewHolder {
     }
 
     mVideoView.setOnPlayerStateChangeListener(mHelper);
+    mVideoView.setPlaybackTimingListener(mHelper);
   }
 
   protected abstract ToroVideoView findVideoView(View itemView);
@@ -55,6 +58,10 @@ public abstract class ToroVideoViewHolder extends BasePlayerViewHolder {
     }
   }
 
+  @Override public boolean hasPreparedPlayer() {
+    return mVideoView != null && mVideoView.hasPreparedPlayer();
+  }
+
   // Client could override this method for better practice
   @Override public void start() {
     if (mVideoView != null) {
@@ -118,4 +125,28 @@ public abstract class ToroVideoViewHolder extends BasePlayerViewHolder {
     return mVideoView;
   }
 
+  /**
+   * Move the playback of this player, with its buffers and decoders, to another one, eg. a
+   * fullscreen one: it plays on without prepare, re-buffering nor seek. See {@link
+   * ToroVideoView#handOffTo(ToroVideoView)}, and {@link im.ene.lab.toro.Toro#handOff} to update
+   * the list this player belongs to.
+   *
+   * @param target player to play the media from now on
+   * @return true if the playback is handed over
+   */
+  public boolean handOffTo(@NonNull ToroVideoViewHolder target) {
+    if (mVideoView == null || target.mVideoView == null  //
+        || !mVideoView.handOffTo(target.mVideoView)) {
+      return false;
+    }
+
+    // The target won't go through preparation: tell it where the playback is
+    Cineer player = target.mVideoView.getMediaPlayer();
+    target.onVideoPrepared(player);
+    if (target.mVideoView.isPlaying()) {
+      target.onPlaybackStarted();
+    }
+    return true;
+  }
+
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro.media;
+
+/**
+ * Timing milestones of one playback, from preparation to first rendered frame, then buffering
+ * stalls. Times are {@link System#nanoTime()} values, called on main thread.
+ */
+public interface OnPlaybackTimingListener {
+
+  /**
+   * The player starts preparing a media: fetching manifest, building renderers.
+   */
+  void onPrepareStarted(Cineer player, long nanoTime);
+
+  /**
+   * Renderers are built and handed to the player.
+   */
+  void onRenderersBuilt(Cineer player, long nanoTime);
+
+  /**
+   * First frame of the prepared media is drawn to the Surface.
+   */
+  void onFirstFrameRendered(Cineer player, long nanoTime);
+
+  /**
+   * Playback stalls to buffer, after its first frame.
+   */
+  void onRebufferingStarted(Cineer player, long nanoTime);
+
+  /**
+   * Playback is ready again after a stall.
+   */
+  void onRebufferingEnded(Cineer player, long nanoTime);
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro.player.internal;
+
+import android.support.annotation.NonNull;
+import com.google.android.exoplayer.DefaultLoadControl;
+import com.google.android.exoplayer.LoadControl;
+import com.google.android.exoplayer.upstream.Allocation;
+import com.google.android.exoplayer.upstream.Allocator;
+import im.ene.lab.toro.media.Cineer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffer memory shared by every player of the process. Renderer builders get their {@link
+ * Allocator} or {@link LoadControl} here instead of creating a {@link
+ * com.google.android.exoplayer.upstream.DefaultAllocator} each: segments released by a player are
+ * reused by the next one instead of being garbage collected.
+ *
+ * Each prepared player gets a budget, so all of them stay under a global cap. Playing players get
+ * the buffer size they ask for first, prepared ones which don't play share what is left in
+ * proportion to theirs. A player over its budget stops loading until playback consumes its buffer
+ * or its budget grows, eg. when it starts playing. Data already buffered is kept: a player whose
+ * budget shrinks doesn't lose it, so the cap may be exceeded until it is consumed or released.
+ *
+ * Any thread.
+ */
+public final class AllocatorPool {
+
+  public static final int SEGMENT_SIZE = 64 * 1024;
+
+  private static AllocatorPool sInstance;
+
+  public static synchronized AllocatorPool getInstance() {
+    if (sInstance == null) {
+      sInstance = new AllocatorPool(getDefaultMaxBytes());
+    }
+    return sInstance;
+  }
+
+  /**
+   * @return 32MB, or a quarter of the heap limit on small heaps
+   */
+  public static int getDefaultMaxBytes() {
+    return (int) Math.min(32 * 1024 * 1024, Runtime.getRuntime().maxMemory() / 4);
+  }
+
+  // Guarded by this
+  private final List<Allocation> availableAllocations = new ArrayList<>();
+  // Allocator of each prepared player, by player
+  private final Map<ExoMediaPlayer, PlayerAllocator> allocators = new IdentityHashMap<>();
+  private int maxBytes;
+  private int allocatedCount;
+
+  public AllocatorPool(int maxBytes) {
+    setMaxBytes(maxBytes);
+  }
+
+  /**
+   * @param player the player whose sample source uses this allocator
+   * @param targetBytes buffer size requested by the sample source
+   * @return allocator for one prepared player, eg. for an {@link
+   * com.google.android.exoplayer.extractor.ExtractorSampleSource}
+   */
+  @NonNull public Allocator createAllocator(@NonNull ExoMediaPlayer player, int targetBytes) {
+    PlayerAllocator allocator = new PlayerAllocator(player);
+    register(allocator);
+    allocator.addTargetBytes(targetBytes);
+    return allocator;
+  }
+
+  /**
+   * @param player the player whose chunk sample sources use this load control
+   * @return a {@link DefaultLoadControl} for one prepared player, over an allocator of this pool.
+   * Its buffer size is the sum of the contributions of its sample sources.
+   */
+  @NonNull public LoadControl createLoadControl(@NonNull ExoMediaPlayer player) {
+    PlayerAllocator allocator = new PlayerAllocator(player);
+    register(allocator);
+    return new BudgetedLoadControl(allocator);
+  }
+
+  public synchronized int getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * @param maxBytes cap of the buffers of all players together. Budgets follow right away.
+   */
+  public synchronized void setMaxBytes(int maxBytes) {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("Max bytes must not be negative.");
+    }
+    this.maxBytes = maxBytes;
+    trimAvailable();
+    updateBudgets();
+  }
+
+  /**
+   * @return bytes held by buffers of all players, released ones excluded
+   */
+  public synchronized int getTotalBytesAllocated() {
+    return allocatedCount * SEGMENT_SIZE;
+  }
+
+  /**
+   * @return bytes held by the buffer of this player, 0 if it is not prepared
+   */
+  public synchronized int getBytesAllocated(@NonNull Cineer player) {
+    PlayerAllocator allocator = allocators.get(player);
+    return allocator != null ? allocator.allocatedCount * SEGMENT_SIZE : 0;
+  }
+
+  /**
+   * @return current budget of this player, 0 if it is not prepared
+   */
+  public synchronized int getBudget(@NonNull Cineer player) {
+    PlayerAllocator allocator = allocators.get(player);
+    return allocator != null ? allocator.budgetBytes : 0;
+  }
+
+  /**
+   * @return bytes held by released segments kept for reuse
+   */
+  public synchronized int getAvailableBytes() {
+    return availableAllocations.size() * SEGMENT_SIZE;
+  }
+
+  /**
+   * Drop the segments kept for reuse, eg. when the application is trimming memory.
+   */
+  public synchronized void trim() {
+    availableAllocations.clear();
+  }
+
+  /**
+   * Called by {@link ExoMediaPlayer} when it starts or stops playing.
+   */
+  synchronized void onPlayWhenReadyChanged(@NonNull ExoMediaPlayer player, boolean playWhenReady) {
+    PlayerAllocator allocator = allocators.get(player);
+    if (allocator != null && allocator.playing != playWhenReady) {
+      allocator.playing = playWhenReady;
+      updateBudgets();
+    }
+  }
+
+  /**
+   * Called by {@link ExoMediaPlayer} when it is released or recycled. Its buffers are still
+   * released to this pool as its renderers release them.
+   */
+  synchronized void unregister(@NonNull ExoMediaPlayer player) {
+    if (allocators.remove(player) != null) {
+      updateBudgets();
+    }
+  }
+
+  private synchronized void register(PlayerAllocator allocator) {
+    // Replaces the allocator of a previous prepare
+    allocators.put(allocator.player, allocator);
+    updateBudgets();
+  }
+
+  // Called with the lock held
+  private void updateBudgets() {
+    long playingTarget = 0;
+    long idleTarget = 0;
+    for (PlayerAllocator allocator : allocators.values()) {
+      if (allocator.playing) {
+        playingTarget += allocator.targetBytes;
+      } else {
+        idleTarget += allocator.targetBytes;
+      }
+    }
+
+    float playingScale = playingTarget <= maxBytes ? 1f : (float) maxBytes / playingTarget;
+    long remaining = Math.max(0, maxBytes - Math.min(playingTarget, maxBytes));
+    float idleScale = idleTarget <= remaining ? 1f : (float) remaining / idleTarget;
+    for (PlayerAllocator allocator : allocators.values()) {
+      allocator.budgetBytes =
+          (int) (allocator.targetBytes * (allocator.playing ? playingScale : idleScale));
+    }
+    // Loaders blocked on their budget check it again
+    notifyAll();
+  }
+
+  // Called with the lock held
+  private void trimAvailable() {
+    int maxAvailableCount = Math.max(0, maxBytes / SEGMENT_SIZE - allocatedCount);
+    for (int i = availableAllocations.size() - 1; i >= maxAvailableCount; i--) {
+      availableAllocations.remove(i);
+    }
+  }
+
+  /**
+   * Allocator of one prepared player. Counts its segments, which come from and go back to the
+   * pool.
+   */
+  private final class PlayerAllocator implements Allocator {
+
+    private final ExoMediaPlayer player;
+    // Guarded by AllocatorPool.this
+    private int targetBytes;
+    private int budgetBytes;
+    private int allocatedCount;
+    private boolean playing;
+
+    PlayerAllocator(ExoMediaPlayer player) {
+      this.player = player;
+      this.playing = player.getPlayWhenReady();
+    }
+
+    void addTargetBytes(int bytes) {
+      synchronized (AllocatorPool.this) {
+        targetBytes += bytes;
+        updateBudgets();
+      }
+    }
+
+    boolean isUnderBudget() {
+      synchronized (AllocatorPool.this) {
+        return allocatedCount * SEGMENT_SIZE < budgetBytes;
+      }
+    }
+
+    @Override public Allocation allocate() {
+      synchronized (AllocatorPool.this) {
+        allocatedCount++;
+        AllocatorPool.this.allocatedCount++;
+        int available = availableAllocations.size();
+        return available > 0 ? availableAllocations.remove(available - 1)
+            : new Allocation(new byte[SEGMENT_SIZE], 0);
+      }
+    }
+
+    @Override public void release(Allocation allocation) {
+      if (allocation.data.length != SEGMENT_SIZE) {
+        throw new IllegalArgumentException("Allocation is not from this pool.");
+      }
+
+      synchronized (AllocatorPool.this) {
+        allocatedCount--;
+        AllocatorPool.this.allocatedCount--;
+        // Keep it for reuse while under the cap, else let it be collected
+        if ((AllocatorPool.this.allocatedCount + availableAllocations.size() + 1) * SEGMENT_SIZE
+            <= maxBytes) {
+          availableAllocations.add(allocation);
+        }
+        AllocatorPool.this.notifyAll();
+      }
+    }
+
+    @Override public void trim(int targetSize) {
+      // Released segments are kept by the pool, under its cap
+    }
+
+    @Override public void blockWhileTotalBytesAllocatedExceeds(int limit)
+        throws InterruptedException {
+      synchronized (AllocatorPool.this) {
+        while (allocatedCount * SEGMENT_SIZE > Math.min(limit, budgetBytes)) {
+          AllocatorPool.this.wait();
+        }
+      }
+    }
+
+    @Override public int getTotalBytesAllocated() {
+      synchronized (AllocatorPool.this) {
+        return allocatedCount * SEGMENT_SIZE;
+      }
+    }
+
+    @Override public int getIndividualAllocationLength() {
+      return SEGMENT_SIZE;
+    }
+  }
+
+  /**
+   * {@link DefaultLoadControl} which also stops loading while its player is over budget.
+   */
+  private static final class BudgetedLoadControl implements LoadControl {
+
+    private final PlayerAllocator allocator;
+    private final DefaultLoadControl delegate;
+    private final Map<Object, Integer> contributions = new HashMap<>();
+
+    BudgetedLoadControl(PlayerAllocator allocator) {
+      this.allocator = allocator;
+      this.delegate = new DefaultLoadControl(allocator);
+    }
+
+    @Override public void register(Object loader, int bufferSizeContribution) {
+      delegate.register(loader, bufferSizeContribution);
+      contributions.put(loader, bufferSizeContribution);
+      allocator.addTargetBytes(bufferSizeContribution);
+    }
+
+    @Override public void unregister(Object loader) {
+      delegate.unregister(loader);
+      Integer contribution = contributions.remove(loader);
+      if (contribution != null) {
+        allocator.addTargetBytes(-contribution);
+      }
+    }
+
+    @Override public Allocator getAllocator() {
+      return allocator;
+    }
+
+    @Override public void trimAllocator() {
+      delegate.trimAllocator();
+    }
+
+    @Override public boolean update(Object loader, long playbackPositionUs,
+        long nextLoadPositionUs, boolean loading) {
+      // Always update the delegate, it tracks the state of every loader
+      boolean shouldLoad = delegate.update(loader, playbackPositionUs, nextLoadPositionUs, loading);
+      return shouldLoad && allocator.isUnderBudget();
+    }
+  }
+}
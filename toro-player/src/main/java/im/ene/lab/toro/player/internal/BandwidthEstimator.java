@@ -0,0 +1,252 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro.player.internal;
+
+import android.Manifest;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import com.google.android.exoplayer.upstream.BandwidthMeter;
+import com.google.android.exoplayer.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer.util.SlidingPercentile;
+import com.google.android.exoplayer.util.Util;
+
+/**
+ * Bandwidth estimate shared by every player of the process. Renderer builders use meters of
+ * {@link #createMeter(Handler, BandwidthMeter.EventListener)}: a new player picks its first
+ * formats from the throughput of previous ones instead of from no estimate at all.
+ *
+ * The estimate is the median of a sliding window of transfers, as {@link DefaultBandwidthMeter}
+ * computes it. It is saved per network type (wifi, LTE...) and restored as the first sample of the
+ * window on the next launch or when that network is back, so recent transfers outweigh it soon.
+ *
+ * Any thread.
+ */
+public final class BandwidthEstimator {
+
+  private static final String PREFS_NAME = "toro_bandwidth";
+  private static final String KEY_PREFIX = "bitrate_";
+  private static final String NETWORK_UNKNOWN = "unknown";
+  // Weight of the saved estimate in the window, as a transfer of 512KB (weights are sqrt(bytes))
+  private static final int SAVED_ESTIMATE_WEIGHT = 724;
+  private static final long SAVE_INTERVAL_MS = 10 * 1000;
+
+  private static BandwidthEstimator sInstance;
+
+  @NonNull public static synchronized BandwidthEstimator getInstance(@NonNull Context context) {
+    if (sInstance == null) {
+      sInstance = new BandwidthEstimator(context.getApplicationContext());
+    }
+    return sInstance;
+  }
+
+  private final SharedPreferences prefs;
+  private final ConnectivityManager connectivityManager;
+
+  // Guarded by this
+  private SlidingPercentile slidingPercentile;
+  private String networkType;
+  private long bitrateEstimate = BandwidthMeter.NO_ESTIMATE;
+  private long bytesAccumulator;
+  private long startTimeMs;
+  private int streamCount;
+  private long lastSaveTimeMs;
+
+  private BandwidthEstimator(@NonNull Context context) {
+    this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    this.connectivityManager =
+        context.checkCallingOrSelfPermission(Manifest.permission.ACCESS_NETWORK_STATE)
+            == PackageManager.PERMISSION_GRANTED
+            ? (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE)
+            : null;
+    restore(getNetworkType());
+    if (connectivityManager != null) {
+      // Registered for the process lifetime, as this estimator
+      context.registerReceiver(new BroadcastReceiver() {
+        @Override public void onReceive(Context context, Intent intent) {
+          onNetworkChanged();
+        }
+      }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+  }
+
+  /**
+   * @param eventHandler handler to notify the listener on, or null
+   * @param eventListener listener of the samples of the transfers of this meter, or null
+   * @return a meter for one player: its transfers feed this estimator, whose estimate it returns
+   */
+  @NonNull public BandwidthMeter createMeter(@Nullable Handler eventHandler,
+      @Nullable BandwidthMeter.EventListener eventListener) {
+    return new Meter(eventHandler, eventListener);
+  }
+
+  /**
+   * @return estimated bandwidth in bits/sec, or {@link BandwidthMeter#NO_ESTIMATE}
+   */
+  public synchronized long getBitrateEstimate() {
+    return bitrateEstimate;
+  }
+
+  /**
+   * Forget the estimate of the current network, in memory and saved.
+   */
+  public synchronized void reset() {
+    slidingPercentile = new SlidingPercentile(DefaultBandwidthMeter.DEFAULT_MAX_WEIGHT);
+    bitrateEstimate = BandwidthMeter.NO_ESTIMATE;
+    prefs.edit().remove(KEY_PREFIX + networkType).apply();
+  }
+
+  synchronized void onTransferStart() {
+    if (streamCount == 0) {
+      startTimeMs = SystemClock.elapsedRealtime();
+    }
+    streamCount++;
+  }
+
+  synchronized void onBytesTransferred(int bytes) {
+    bytesAccumulator += bytes;
+  }
+
+  /**
+   * @return elapsed time and bytes of the sample taken, or null if none
+   */
+  @Nullable synchronized long[] onTransferEnd() {
+    if (streamCount == 0) {
+      return null;
+    }
+
+    long nowMs = SystemClock.elapsedRealtime();
+    long elapsedMs = nowMs - startTimeMs;
+    long[] sample = null;
+    if (elapsedMs > 0) {
+      float bitsPerSecond = (bytesAccumulator * 8000) / elapsedMs;
+      slidingPercentile.addSample((int) Math.sqrt(bytesAccumulator), bitsPerSecond);
+      updateEstimate();
+      sample = new long[] { elapsedMs, bytesAccumulator };
+      if (nowMs - lastSaveTimeMs >= SAVE_INTERVAL_MS) {
+        save();
+        lastSaveTimeMs = nowMs;
+      }
+    }
+    streamCount--;
+    if (streamCount > 0) {
+      startTimeMs = nowMs;
+    }
+    bytesAccumulator = 0;
+    return sample;
+  }
+
+  private void onNetworkChanged() {
+    String type = getNetworkType();
+    synchronized (this) {
+      if (type.equals(networkType)) {
+        return;
+      }
+      // Samples of the previous network don't tell the throughput of this one
+      save();
+      bytesAccumulator = 0;
+      startTimeMs = SystemClock.elapsedRealtime();
+      restore(type);
+    }
+  }
+
+  // Called with the lock held, or from the constructor
+  private void restore(@NonNull String type) {
+    networkType = type;
+    slidingPercentile = new SlidingPercentile(DefaultBandwidthMeter.DEFAULT_MAX_WEIGHT);
+    long saved = prefs.getLong(KEY_PREFIX + type, BandwidthMeter.NO_ESTIMATE);
+    if (saved != BandwidthMeter.NO_ESTIMATE) {
+      slidingPercentile.addSample(SAVED_ESTIMATE_WEIGHT, saved);
+    }
+    updateEstimate();
+  }
+
+  // Called with the lock held
+  private void save() {
+    if (bitrateEstimate != BandwidthMeter.NO_ESTIMATE) {
+      prefs.edit().putLong(KEY_PREFIX + networkType, bitrateEstimate).apply();
+    }
+  }
+
+  // Called with the lock held, or from the constructor
+  private void updateEstimate() {
+    float estimate = slidingPercentile.getPercentile(0.5f);
+    bitrateEstimate = Float.isNaN(estimate) ? BandwidthMeter.NO_ESTIMATE : (long) estimate;
+  }
+
+  @NonNull private String getNetworkType() {
+    NetworkInfo info = connectivityManager != null ? connectivityManager.getActiveNetworkInfo()
+        : null;
+    if (info == null) {
+      return NETWORK_UNKNOWN;
+    }
+    // Throughput of mobile networks depends on their technology: LTE, HSPA...
+    return info.getType() == ConnectivityManager.TYPE_MOBILE
+        ? Util.toLowerInvariant(info.getTypeName() + "_" + info.getSubtypeName())
+        : Util.toLowerInvariant(info.getTypeName());
+  }
+
+  /**
+   * Meter of one player. The estimate is the shared one, samples are notified to this meter's
+   * listener only.
+   */
+  private final class Meter implements BandwidthMeter {
+
+    private final Handler eventHandler;
+    private final EventListener eventListener;
+
+    Meter(Handler eventHandler, EventListener eventListener) {
+      this.eventHandler = eventHandler;
+      this.eventListener = eventListener;
+    }
+
+    @Override public long getBitrateEstimate() {
+      return BandwidthEstimator.this.getBitrateEstimate();
+    }
+
+    @Override public void onTransferStart() {
+      BandwidthEstimator.this.onTransferStart();
+    }
+
+    @Override public void onBytesTransferred(int bytes) {
+      BandwidthEstimator.this.onBytesTransferred(bytes);
+    }
+
+    @Override public void onTransferEnd() {
+      final long[] sample = BandwidthEstimator.this.onTransferEnd();
+      if (sample == null || eventHandler == null || eventListener == null) {
+        return;
+      }
+
+      final long bitrate = getBitrateEstimate();
+      eventHandler.post(new Runnable() {
+        @Override public void run() {
+          eventListener.onBandwidthSample((int) sample[0], sample[1], bitrate);
+        }
+      });
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro.player.internal;
+
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import com.google.android.exoplayer.upstream.UriDataSource;
+import com.google.android.exoplayer.upstream.UriLoadable;
+import com.google.android.exoplayer.util.ManifestFetcher;
+import java.io.IOException;
+
+/**
+ * {@link ManifestFetcher} whose {@link #singleLoad(Looper, ManifestCallback)} goes through a
+ * {@link ManifestCache}. The manifest it delivers is the one returned by {@link #getManifest()}
+ * until a refresh loads a newer one, so chunk sources refresh live manifests as usual.
+ *
+ * @hide
+ */
+final class CachedManifestFetcher<T> extends ManifestFetcher<T> {
+
+  /**
+   * @param manifestCache cache to load through, or null to load as {@link ManifestFetcher} does
+   */
+  static <T> ManifestFetcher<T> create(String manifestUri, UriDataSource uriDataSource,
+      UriLoadable.Parser<T> parser, @Nullable ManifestCache manifestCache) {
+    return manifestCache == null ? new ManifestFetcher<>(manifestUri, uriDataSource, parser)
+        : new CachedManifestFetcher<>(manifestUri, uriDataSource, parser, manifestCache);
+  }
+
+  private final String manifestUri;
+  private final UriDataSource uriDataSource;
+  private final UriLoadable.Parser<T> parser;
+  private final ManifestCache manifestCache;
+
+  // Set by singleLoad(), read by chunk sources on their own thread
+  private volatile T cachedManifest;
+  private volatile long cachedLoadStartTimestamp;
+  private volatile long cachedLoadCompleteTimestamp;
+
+  private CachedManifestFetcher(String manifestUri, UriDataSource uriDataSource,
+      UriLoadable.Parser<T> parser, @NonNull ManifestCache manifestCache) {
+    super(manifestUri, uriDataSource, parser);
+    this.manifestUri = manifestUri;
+    this.uriDataSource = uriDataSource;
+    this.parser = parser;
+    this.manifestCache = manifestCache;
+  }
+
+  @Override public void singleLoad(Looper callbackLooper, final ManifestCallback<T> callback) {
+    manifestCache.load(manifestUri, uriDataSource, parser, callbackLooper,
+        new ManifestCache.Callback<T>() {
+          @Override public void onManifest(T manifest, long loadStartTimestamp,
+              long loadCompleteTimestamp) {
+            cachedLoadStartTimestamp = loadStartTimestamp;
+            cachedLoadCompleteTimestamp = loadCompleteTimestamp;
+            cachedManifest = manifest;
+            callback.onSingleManifest(manifest);
+          }
+
+          @Override public void onManifestError(IOException error) {
+            callback.onSingleManifestError(error);
+          }
+        });
+  }
+
+  @Override public T getManifest() {
+    T manifest = super.getManifest();
+    return manifest != null ? manifest : cachedManifest;
+  }
+
+  @Override public long getManifestLoadStartTimestamp() {
+    return super.getManifest() != null ? super.getManifestLoadStartTimestamp()
+        : cachedLoadStartTimestamp;
+  }
+
+  @Override public long getManifestLoadCompleteTimestamp() {
+    return super.getManifest() != null ? super.getManifestLoadCompleteTimestamp()
+        : cachedLoadCompleteTimestamp;
+  }
+}
@@ -19,10 +19,11 @@ import android.annotation.TargetApi;
 import android.content.Context;
 import android.media.AudioManager;
 import android.media.MediaCodec;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
+import android.support.annotation.Nullable;
 import android.util.Log;
-import com.google.android.exoplayer.DefaultLoadControl;
 import com.google.android.exoplayer.LoadControl;
 import com.google.android.exoplayer.MediaCodecSelector;
 import com.google.android.exoplayer.MediaCodecVideoTrackRenderer;
@@ -44,9 +45,8 @@ import com.google.android.exoplayer.drm.MediaDrmCallback;
 import com.google.android.exoplayer.drm.StreamingDrmSessionManager;
 import com.google.android.exoplayer.drm.UnsupportedDrmException;
 import com.google.android.exoplayer.text.TextTrackRenderer;
+import com.google.android.exoplayer.upstream.BandwidthMeter;
 import com.google.android.exoplayer.upstream.DataSource;
-import com.google.android.exoplayer.upstream.DefaultAllocator;
-import com.google.android.exoplayer.upstream.DefaultBandwidthMeter;
 import com.google.android.exoplayer.upstream.DefaultUriDataSource;
 import com.google.android.exoplayer.upstream.UriDataSource;
 import com.google.android.exoplayer.util.ManifestFetcher;
@@ -61,7 +61,7 @@ public class DashRendererBuilder implements ExoMediaPlayer.RendererBuilder {
 
   private static final String TAG = "DashRendererBuilder";
 
-  private static final int BUFFER_SEGMENT_SIZE = 64 * 1024; // 64 kilobytes?
+  private static final int BUFFER_SEGMENT_SIZE = AllocatorPool.SEGMENT_SIZE;
   private static final int VIDEO_BUFFER_SEGMENTS = 200;
   private static final int AUDIO_BUFFER_SEGMENTS = 54;
   private static final int TEXT_BUFFER_SEGMENTS = 2;
@@ -75,19 +75,34 @@ public class DashRendererBuilder implements ExoMediaPlayer.RendererBuilder {
   private final String userAgent;
   private final String url;
   private final MediaDrmCallback drmCallback;
+  private final MediaCache mediaCache;
+  private final ManifestCache manifestCache;
 
   private AsyncRendererBuilder currentAsyncBuilder;
 
   public DashRendererBuilder(Context context, String userAgent, String url,
       MediaDrmCallback drmCallback) {
+    this(context, userAgent, url, drmCallback, null, null);
+  }
+
+  /**
+   * @param mediaCache cache to read chunks through, or null to read them from upstream only
+   * @param manifestCache cache to load the manifest through, or null to request it on each prepare
+   */
+  public DashRendererBuilder(Context context, String userAgent, String url,
+      MediaDrmCallback drmCallback, @Nullable MediaCache mediaCache,
+      @Nullable ManifestCache manifestCache) {
     this.context = context;
     this.userAgent = userAgent;
     this.url = url;
     this.drmCallback = drmCallback;
+    this.mediaCache = mediaCache;
+    this.manifestCache = manifestCache;
   }
 
   @Override public void buildRenderers(ExoMediaPlayer player) {
-    currentAsyncBuilder = new AsyncRendererBuilder(context, userAgent, url, drmCallback, player);
+    currentAsyncBuilder = new AsyncRendererBuilder(context, userAgent, url, drmCallback,
+        mediaCache, manifestCache, player);
     currentAsyncBuilder.init();
   }
 
@@ -104,6 +119,8 @@ public class DashRendererBuilder implements ExoMediaPlayer.RendererBuilder {
     private final Context context;
     private final String userAgent;
     private final MediaDrmCallback drmCallback;
+    private final MediaCache mediaCache;
+    private final Uri mediaUri;
     private final ExoMediaPlayer player;
     private final ManifestFetcher<MediaPresentationDescription> manifestFetcher;
     private final UriDataSource manifestDataSource;
@@ -113,14 +130,18 @@ public class DashRendererBuilder implements ExoMediaPlayer.RendererBuilder {
     private long elapsedRealTimeOffset;
 
     public AsyncRendererBuilder(Context context, String userAgent, String url,
-        MediaDrmCallback drmCallback, ExoMediaPlayer player) {
+        MediaDrmCallback drmCallback, MediaCache mediaCache, ManifestCache manifestCache,
+        ExoMediaPlayer player) {
       this.context = context;
       this.userAgent = userAgent;
       this.drmCallback = drmCallback;
+      this.mediaCache = mediaCache;
+      this.mediaUri = Uri.parse(url);
       this.player = player;
       MediaPresentationDescriptionParser parser = new MediaPresentationDescriptionParser();
       manifestDataSource = new DefaultUriDataSource(context, userAgent);
-      manifestFetcher = new ManifestFetcher<>(url, manifestDataSource, parser);
+      manifestFetcher =
+          CachedManifestFetcher.create(url, manifestDataSource, parser, manifestCache);
     }
 
     public void init() {
@@ -131,6 +152,11 @@ public class DashRendererBuilder implements ExoMediaPlayer.RendererBuilder {
       canceled = true;
     }
 
+    private DataSource createDataSource(BandwidthMeter bandwidthMeter) {
+      DataSource upstream = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+      return mediaCache != null ? mediaCache.createDataSource(upstream, mediaUri) : upstream;
+    }
+
     @Override public void onSingleManifest(MediaPresentationDescription manifest) {
       if (canceled) {
         return;
@@ -176,8 +202,9 @@ public class DashRendererBuilder implements ExoMediaPlayer.RendererBuilder {
     private void buildRenderers() {
       Period period = manifest.getPeriod(0);
       Handler mainHandler = player.getMainHandler();
-      LoadControl loadControl = new DefaultLoadControl(new DefaultAllocator(BUFFER_SEGMENT_SIZE));
-      DefaultBandwidthMeter bandwidthMeter = new DefaultBandwidthMeter(mainHandler, player);
+      LoadControl loadControl = AllocatorPool.getInstance().createLoadControl(player);
+      BandwidthMeter bandwidthMeter =
+          BandwidthEstimator.getInstance(context).createMeter(mainHandler, player);
 
       boolean hasContentProtection = false;
       for (int i = 0; i < period.adaptationSets.size(); i++) {
@@ -208,7 +235,7 @@ public class DashRendererBuilder implements ExoMediaPlayer.RendererBuilder {
       }
 
       // Build the video renderer.
-      DataSource videoDataSource = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+      DataSource videoDataSource = createDataSource(bandwidthMeter);
       ChunkSource videoChunkSource = new DashChunkSource(manifestFetcher,
           DefaultDashTrackSelector.newVideoInstance(context, true, filterHdContent),
           videoDataSource, new AdaptiveEvaluator(bandwidthMeter), LIVE_EDGE_LATENCY_MS,
@@ -222,7 +249,7 @@ public class DashRendererBuilder implements ExoMediaPlayer.RendererBuilder {
               mainHandler, player, 50);
 
       // Build the audio renderer.
-      DataSource audioDataSource = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+      DataSource audioDataSource = createDataSource(bandwidthMeter);
       ChunkSource audioChunkSource =
           new DashChunkSource(manifestFetcher, DefaultDashTrackSelector.newAudioInstance(),
               audioDataSource, null, LIVE_EDGE_LATENCY_MS, elapsedRealTimeOffset, mainHandler,
@@ -236,7 +263,7 @@ public class DashRendererBuilder implements ExoMediaPlayer.RendererBuilder {
               AudioCapabilities.getCapabilities(context), AudioManager.STREAM_MUSIC);
 
       // Build the text renderer.
-      DataSource textDataSource = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+      DataSource textDataSource = createDataSource(bandwidthMeter);
       ChunkSource textChunkSource =
           new DashChunkSource(manifestFetcher, DefaultDashTrackSelector.newTextInstance(),
               textDataSource, null, LIVE_EDGE_LATENCY_MS, elapsedRealTimeOffset, mainHandler,
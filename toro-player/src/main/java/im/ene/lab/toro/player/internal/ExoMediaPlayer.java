@@ -53,6 +53,7 @@ import com.google.android.exoplayer.upstream.BandwidthMeter;
 import com.google.android.exoplayer.upstream.DefaultBandwidthMeter;
 import com.google.android.exoplayer.util.DebugTextViewHelper;
 import im.ene.lab.toro.media.OnInfoListener;
+import im.ene.lab.toro.media.OnPlaybackTimingListener;
 import im.ene.lab.toro.media.OnPlayerStateChangeListener;
 import im.ene.lab.toro.media.OnVideoSizeChangedListener;
 import im.ene.lab.toro.media.PlaybackException;
@@ -197,6 +198,12 @@ public class ExoMediaPlayer                     //
   private static final int EXO_STATE_IDLE = ExoPlayer.STATE_IDLE;
   private static final int EXO_STATE_PREPARING = ExoPlayer.STATE_PREPARING;
   private static final int EXO_STATE_BUFFERING = ExoPlayer.STATE_BUFFERING;
+
+  // No-op message target, see awaitPlaybackThread()
+  private static final ExoPlayer.ExoPlayerComponent BARRIER = new ExoPlayer.ExoPlayerComponent() {
+    @Override public void handleMessage(int messageType, Object message) {
+    }
+  };
   private static final int EXO_STATE_READY = ExoPlayer.STATE_READY;
   private static final int EXO_STATE_ENDED = ExoPlayer.STATE_ENDED;
 
@@ -213,7 +220,7 @@ public class ExoMediaPlayer                     //
   private static final int RENDERER_BUILDING_STATE_BUILDING = 2;
   private static final int RENDERER_BUILDING_STATE_BUILT = 3;
 
-  private final RendererBuilder rendererBuilder;
+  private RendererBuilder rendererBuilder;
   /* package */ final ExoPlayer player;
 
   private final Handler mainHandler;
@@ -241,10 +248,23 @@ public class ExoMediaPlayer                     //
   private OnPlayerStateChangeListener onPlayerStateChangeListener;
   private OnVideoSizeChangedListener onVideoSizeChangedListener;
 
+  // Timing milestones of current preparation
+  private OnPlaybackTimingListener playbackTimingListener;
+  private boolean firstFrameRendered;
+  private boolean rebuffering;
+
   public ExoMediaPlayer(RendererBuilder rendererBuilder) {
+    this();
+    this.rendererBuilder = rendererBuilder;
+  }
+
+  /**
+   * Create a player without any {@link RendererBuilder}. One must be given by
+   * {@link #prepare(RendererBuilder)} before preparing. Used by {@link ExoMediaPlayerPool}.
+   */
+  /* package */ ExoMediaPlayer() {
     player = ExoPlayer.Factory.newInstance(RENDERER_COUNT, 1000, 5000);
     player.addListener(this);
-    this.rendererBuilder = rendererBuilder;
     mainHandler = new Handler();
     listeners = new CopyOnWriteArrayList<>();
     lastReportedPlaybackState = EXO_STATE_IDLE;
@@ -277,6 +297,10 @@ public class ExoMediaPlayer                     //
     id3MetadataListener = listener;
   }
 
+  public void setPlaybackTimingListener(OnPlaybackTimingListener listener) {
+    playbackTimingListener = listener;
+  }
+
   public void setSurface(Surface surface) {
     this.surface = surface;
     pushSurface(false);
@@ -296,6 +320,14 @@ public class ExoMediaPlayer                     //
     pushSurface(true);
   }
 
+  /**
+   * Wait until the playback thread has handled every message sent so far, eg. a Surface change.
+   * Returns immediately if the player is released. Any thread.
+   */
+  /* package */ void awaitPlaybackThread() {
+    player.blockingSendMessage(BARRIER, 0, null);
+  }
+
   public int getTrackCount(int type) {
     return player.getTrackCount(type);
   }
@@ -320,6 +352,14 @@ public class ExoMediaPlayer                     //
   }
 
   public void setBackgrounded(boolean backgrounded) {
+    setBackgrounded(backgrounded, true);
+  }
+
+  /**
+   * @param blockForSurfaceClear false to clear the Surface without waiting for the playback
+   * thread. The Surface must then be kept until {@link ExoMediaPlayerReleaser#releaseSurface}.
+   */
+  public void setBackgrounded(boolean backgrounded, boolean blockForSurfaceClear) {
     if (this.backgrounded == backgrounded) {
       return;
     }
@@ -328,13 +368,35 @@ public class ExoMediaPlayer                     //
     if (backgrounded) {
       videoTrackToRestore = getSelectedTrack(TYPE_VIDEO);
       setSelectedTrack(TYPE_VIDEO, TRACK_DISABLED);
-      blockingClearSurface();
+      surface = null;
+      pushSurface(blockForSurfaceClear);
     } else {
       setSelectedTrack(TYPE_VIDEO, videoTrackToRestore);
     }
   }
 
+  /**
+   * Prepare this player for other media, re-using its {@link ExoPlayer} and playback thread.
+   *
+   * @param rendererBuilder builder for renderers of the new media
+   */
+  public void prepare(RendererBuilder rendererBuilder) {
+    setRendererBuilder(rendererBuilder);
+    prepare();
+  }
+
+  /* package */ void setRendererBuilder(RendererBuilder rendererBuilder) {
+    if (this.rendererBuilder != null && this.rendererBuilder != rendererBuilder) {
+      this.rendererBuilder.cancel();
+    }
+    this.rendererBuilder = rendererBuilder;
+  }
+
   public void prepare() {
+    if (rendererBuilder == null) {
+      throw new IllegalStateException("No RendererBuilder. Call prepare(RendererBuilder) instead.");
+    }
+
     if (rendererBuildingState == RENDERER_BUILDING_STATE_BUILT) {
       player.stop();
     }
@@ -342,7 +404,12 @@ public class ExoMediaPlayer                     //
     videoFormat = null;
     videoRenderer = null;
     audioRenderer = null;
+    firstFrameRendered = false;
+    rebuffering = false;
     rendererBuildingState = RENDERER_BUILDING_STATE_BUILDING;
+    if (playbackTimingListener != null) {
+      playbackTimingListener.onPrepareStarted(this, System.nanoTime());
+    }
     maybeReportPlayerState();
     rendererBuilder.buildRenderers(this);
   }
@@ -374,6 +441,9 @@ public class ExoMediaPlayer                     //
     pushSurface(false);
     player.prepare(renderers);
     rendererBuildingState = RENDERER_BUILDING_STATE_BUILT;
+    if (playbackTimingListener != null) {
+      playbackTimingListener.onRenderersBuilt(this, System.nanoTime());
+    }
   }
 
   /**
@@ -397,6 +467,7 @@ public class ExoMediaPlayer                     //
 
   public void setPlayWhenReady(boolean playWhenReady) {
     player.setPlayWhenReady(playWhenReady);
+    AllocatorPool.getInstance().onPlayWhenReadyChanged(this, playWhenReady);
   }
 
   public void seekTo(long positionMs) {
@@ -439,10 +510,73 @@ public class ExoMediaPlayer                     //
   }
 
   public void release() {
-    rendererBuilder.cancel();
+    if (rendererBuilder != null) {
+      rendererBuilder.cancel();
+    }
     rendererBuildingState = RENDERER_BUILDING_STATE_IDLE;
     surface = null;
     player.release();
+    AllocatorPool.getInstance().unregister(this);
+  }
+
+  /**
+   * Bring this player back to a fresh state without releasing its {@link ExoPlayer}, so it can be
+   * prepared again by someone else. Renderers (and their codecs) are released by
+   * {@link ExoPlayer#stop()}, the playback thread is kept. Used by {@link ExoMediaPlayerPool}.
+   */
+  /* package */ void recycle() {
+    if (rendererBuilder != null) {
+      rendererBuilder.cancel();
+      rendererBuilder = null;
+    }
+    player.stop();
+    player.setPlayWhenReady(false);
+    player.seekTo(0);
+    AllocatorPool.getInstance().unregister(this);
+    // Renderers are released by stop(), so the Surface can be dropped without blocking.
+    surface = null;
+    videoRenderer = null;
+    audioRenderer = null;
+    codecCounters = null;
+    videoFormat = null;
+    bandwidthMeter = null;
+    backgrounded = false;
+    player.setSelectedTrack(TYPE_VIDEO, TRACK_DEFAULT);
+    player.setSelectedTrack(TYPE_TEXT, TRACK_DISABLED);
+    rendererBuildingState = RENDERER_BUILDING_STATE_IDLE;
+    lastReportedPlaybackState = EXO_STATE_IDLE;
+    lastReportedPlayWhenReady = false;
+    videoWidth = 0;
+    videoHeight = 0;
+    mediaPrepared = false;
+    firstFrameRendered = false;
+    rebuffering = false;
+
+    clearListeners();
+  }
+
+  /**
+   * Main thread part of a release by {@link ExoMediaPlayerReleaser}: stop playing and building
+   * renderers, drop listeners. {@link #release()} can then run on another thread.
+   */
+  /* package */ void detach() {
+    if (rendererBuilder != null) {
+      rendererBuilder.cancel();
+    }
+    rendererBuildingState = RENDERER_BUILDING_STATE_IDLE;
+    player.setPlayWhenReady(false);
+    clearListeners();
+  }
+
+  private void clearListeners() {
+    listeners.clear();
+    playbackTimingListener = null;
+    captionListener = null;
+    id3MetadataListener = null;
+    internalErrorListener = null;
+    infoListener = null;
+    onPlayerStateChangeListener = null;
+    onVideoSizeChangedListener = null;
   }
 
   @Override public void reset() {
@@ -630,7 +764,31 @@ public class ExoMediaPlayer                     //
   }
 
   @Override public void onDrawnToSurface(Surface surface) {
-    // Do nothing.
+    // Also called after a Surface change, only the first one of a preparation matters.
+    if (!firstFrameRendered) {
+      firstFrameRendered = true;
+      if (playbackTimingListener != null) {
+        playbackTimingListener.onFirstFrameRendered(this, System.nanoTime());
+      }
+    }
+  }
+
+  private void maybeReportRebuffering(boolean playWhenReady, int playbackState) {
+    if (playbackTimingListener == null) {
+      rebuffering = false;
+      return;
+    }
+
+    if (!rebuffering) {
+      // Stalls before first frame are part of time to first frame, not rebuffering
+      if (firstFrameRendered && playWhenReady && playbackState == EXO_STATE_BUFFERING) {
+        rebuffering = true;
+        playbackTimingListener.onRebufferingStarted(this, System.nanoTime());
+      }
+    } else if (playbackState != EXO_STATE_BUFFERING || !playWhenReady) {
+      rebuffering = false;
+      playbackTimingListener.onRebufferingEnded(this, System.nanoTime());
+    }
   }
 
   @Override
@@ -671,6 +829,7 @@ public class ExoMediaPlayer                     //
       }
       lastReportedPlayWhenReady = playWhenReady;
       lastReportedPlaybackState = playbackState;
+      maybeReportRebuffering(playWhenReady, playbackState);
 
       // Other listener
       switch (getPlaybackState()) {
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro.player.internal;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A bounded pool of warm {@link ExoMediaPlayer}. Creating an ExoMediaPlayer starts a new
+ * {@link com.google.android.exoplayer.ExoPlayer} and its playback thread, releasing it stops them.
+ * Instead, a player is checked out by {@link #acquire(ExoMediaPlayer.RendererBuilder)}, prepared
+ * with the builder of the new media, and given back by {@link #release(ExoMediaPlayer)} once it is
+ * not needed anymore. Given back players have their renderers (so their codecs) released, but keep
+ * the playback thread. Players given back to a full pool are released off the main thread, by
+ * {@link ExoMediaPlayerReleaser}.
+ *
+ * Main thread only.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+public final class ExoMediaPlayerPool {
+
+  public static final int DEFAULT_MAX_SIZE = 2;
+
+  private static ExoMediaPlayerPool sInstance;
+
+  public static ExoMediaPlayerPool getInstance() {
+    if (sInstance == null) {
+      sInstance = new ExoMediaPlayerPool();
+    }
+    return sInstance;
+  }
+
+  private final List<ExoMediaPlayer> players = new ArrayList<>();
+
+  private int maxSize = DEFAULT_MAX_SIZE;
+  private int hitCount;
+  private int missCount;
+
+  private ExoMediaPlayerPool() {
+  }
+
+  /**
+   * Check out a player from the pool, or create a new one if the pool is empty. The player's
+   * renderers are not built yet: call {@link ExoMediaPlayer#prepare()} to start playback.
+   *
+   * @param rendererBuilder builder for renderers of the media to play
+   * @return a player using rendererBuilder
+   */
+  @NonNull public ExoMediaPlayer acquire(@NonNull ExoMediaPlayer.RendererBuilder rendererBuilder) {
+    ExoMediaPlayer player;
+    int size = players.size();
+    if (size > 0) {
+      hitCount++;
+      player = players.remove(size - 1);
+    } else {
+      missCount++;
+      player = new ExoMediaPlayer();
+    }
+
+    player.setRendererBuilder(rendererBuilder);
+    return player;
+  }
+
+  /**
+   * Give a player back to the pool. It must not be used by the caller anymore.
+   *
+   * @param player the player acquired from {@link #acquire(ExoMediaPlayer.RendererBuilder)}
+   */
+  public void release(@NonNull ExoMediaPlayer player) {
+    if (players.contains(player)) {
+      return;
+    }
+
+    if (players.size() < maxSize) {
+      player.recycle();
+      players.add(player);
+    } else {
+      ExoMediaPlayerReleaser.getInstance().release(player);
+    }
+  }
+
+  /**
+   * Release every pooled player, for example when the application is trimming memory.
+   */
+  public void clear() {
+    for (int i = 0, size = players.size(); i < size; i++) {
+      ExoMediaPlayerReleaser.getInstance().release(players.get(i));
+    }
+    players.clear();
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * @param maxSize max number of idle players kept by this pool. 0 disables pooling.
+   */
+  public void setMaxSize(int maxSize) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("Max size must not be negative.");
+    }
+
+    this.maxSize = maxSize;
+    while (players.size() > maxSize) {
+      ExoMediaPlayerReleaser.getInstance().release(players.remove(players.size() - 1));
+    }
+  }
+
+  /**
+   * @return number of idle players in this pool
+   */
+  public int size() {
+    return players.size();
+  }
+
+  /**
+   * @return number of {@link #acquire(ExoMediaPlayer.RendererBuilder)} served by a pooled player
+   */
+  public int getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * @return number of {@link #acquire(ExoMediaPlayer.RendererBuilder)} which created a new player
+   */
+  public int getMissCount() {
+    return missCount;
+  }
+
+  public void resetStats() {
+    hitCount = 0;
+    missCount = 0;
+  }
+}
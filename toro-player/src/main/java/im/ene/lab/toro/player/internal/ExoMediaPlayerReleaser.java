@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro.player.internal;
+
+import android.annotation.TargetApi;
+import android.graphics.SurfaceTexture;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.Surface;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tears {@link ExoMediaPlayer}s down on a background thread. Releasing a player joins its playback
+ * thread, and clearing its Surface waits for that thread: on main thread, both drop frames when
+ * they happen during a scroll. Callers hand the player (or the Surface it renders to) over here
+ * and return immediately. Tasks run in order, so a Surface cleared before it is released is done
+ * with by then.
+ *
+ * Back-pressure: at most {@link #getMaxPending()} tasks wait for the background thread. Past
+ * that, the task runs on the caller's thread, blocking as it used to, so pending players (and
+ * their codecs) don't pile up.
+ *
+ * Hand-over from main thread only.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+public final class ExoMediaPlayerReleaser {
+
+  private static final String TAG = "ToroReleaser";
+
+  public static final int DEFAULT_MAX_PENDING = 4;
+
+  private static ExoMediaPlayerReleaser sInstance;
+
+  public static ExoMediaPlayerReleaser getInstance() {
+    if (sInstance == null) {
+      sInstance = new ExoMediaPlayerReleaser();
+    }
+    return sInstance;
+  }
+
+  private final AtomicInteger pending = new AtomicInteger();
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private Handler handler;  // Lazily started
+
+  private int maxPending = DEFAULT_MAX_PENDING;
+  private int asyncCount;
+  private int syncCount;
+
+  private ExoMediaPlayerReleaser() {
+  }
+
+  /**
+   * Release a player: its renderers, codecs and playback thread. It must not be used by the caller
+   * anymore, its listeners are cleared right away so no more callbacks reach the caller.
+   */
+  public void release(@NonNull final ExoMediaPlayer player) {
+    player.detach();
+    submit(new Runnable() {
+      @Override public void run() {
+        player.release();
+      }
+    });
+  }
+
+  /**
+   * Release a Surface and its SurfaceTexture once the player doesn't render to them anymore: its
+   * Surface must already be cleared (or the player stopped or released) on caller's thread. For
+   * {@link android.view.TextureView.SurfaceTextureListener#onSurfaceTextureDestroyed(
+   * SurfaceTexture)} returning false.
+   *
+   * @param player the player which rendered to the Surface, or null if there is none
+   */
+  public void releaseSurface(@Nullable final ExoMediaPlayer player, @Nullable final Surface surface,
+      @Nullable final SurfaceTexture surfaceTexture) {
+    submit(new Runnable() {
+      @Override public void run() {
+        if (player != null) {
+          // Messages are handled in order: once this returns, the Surface change was handled
+          player.awaitPlaybackThread();
+        }
+        if (surface != null) {
+          surface.release();
+        }
+        if (surfaceTexture != null) {
+          surfaceTexture.release();
+        }
+      }
+    });
+  }
+
+  /**
+   * Clear the Surface of a player without waiting for its playback thread: the player is told
+   * right away, and {@code onCleared} runs on main thread once it doesn't render to the Surface
+   * anymore. For example before another player renders to that Surface.
+   */
+  public void clearSurface(@NonNull final ExoMediaPlayer player,
+      @NonNull final Runnable onCleared) {
+    player.setSurface(null);
+    submit(new Runnable() {
+      @Override public void run() {
+        player.awaitPlaybackThread();
+        mainHandler.post(onCleared);
+      }
+    });
+  }
+
+  private void submit(final Runnable task) {
+    if (pending.get() >= maxPending) {
+      // Background thread lags behind, don't queue more players
+      syncCount++;
+      task.run();
+      return;
+    }
+
+    if (handler == null) {
+      HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+      thread.start();
+      handler = new Handler(thread.getLooper());
+    }
+
+    asyncCount++;
+    pending.incrementAndGet();
+    handler.post(new Runnable() {
+      @Override public void run() {
+        try {
+          task.run();
+        } finally {
+          pending.decrementAndGet();
+        }
+      }
+    });
+  }
+
+  public int getMaxPending() {
+    return maxPending;
+  }
+
+  /**
+   * @param maxPending max number of tasks waiting for the background thread. 0 runs every task
+   * on caller's thread.
+   */
+  public void setMaxPending(int maxPending) {
+    if (maxPending < 0) {
+      throw new IllegalArgumentException("Max pending must not be negative.");
+    }
+    this.maxPending = maxPending;
+  }
+
+  /**
+   * @return number of tasks waiting for, or running on the background thread
+   */
+  public int getPendingCount() {
+    return pending.get();
+  }
+
+  /**
+   * @return number of tasks handed over to the background thread
+   */
+  public int getAsyncCount() {
+    return asyncCount;
+  }
+
+  /**
+   * @return number of tasks run on caller's thread, because too many were pending
+   */
+  public int getSyncCount() {
+    return syncCount;
+  }
+
+  public void resetStats() {
+    asyncCount = 0;
+    syncCount = 0;
+  }
+}
@@ -22,6 +22,7 @@ import android.media.MediaCodec;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
+import android.support.annotation.Nullable;
 import com.google.android.exoplayer.MediaCodecSelector;
 import com.google.android.exoplayer.MediaCodecVideoTrackRenderer;
 import com.google.android.exoplayer.TrackRenderer;
@@ -30,9 +31,8 @@ import com.google.android.exoplayer.extractor.Extractor;
 import com.google.android.exoplayer.extractor.ExtractorSampleSource;
 import com.google.android.exoplayer.text.TextTrackRenderer;
 import com.google.android.exoplayer.upstream.Allocator;
+import com.google.android.exoplayer.upstream.BandwidthMeter;
 import com.google.android.exoplayer.upstream.DataSource;
-import com.google.android.exoplayer.upstream.DefaultAllocator;
-import com.google.android.exoplayer.upstream.DefaultBandwidthMeter;
 import com.google.android.exoplayer.upstream.DefaultUriDataSource;
 
 /**
@@ -41,26 +41,41 @@ import com.google.android.exoplayer.upstream.DefaultUriDataSource;
 @TargetApi(Build.VERSION_CODES.JELLY_BEAN)  //
 public class ExtractorRendererBuilder implements ExoMediaPlayer.RendererBuilder {
 
-  private static final int BUFFER_SEGMENT_SIZE = 64 * 1024;
+  private static final int BUFFER_SEGMENT_SIZE = AllocatorPool.SEGMENT_SIZE;
   private static final int BUFFER_SEGMENT_COUNT = 256;
 
   private final Context context;
   private final String userAgent;
   private final Uri uri;
+  private final MediaCache mediaCache;
 
   public ExtractorRendererBuilder(Context context, String userAgent, Uri uri) {
+    this(context, userAgent, uri, null);
+  }
+
+  /**
+   * @param mediaCache cache to read the media through, or null to read it from upstream only
+   */
+  public ExtractorRendererBuilder(Context context, String userAgent, Uri uri,
+      @Nullable MediaCache mediaCache) {
     this.context = context;
     this.userAgent = userAgent;
     this.uri = uri;
+    this.mediaCache = mediaCache;
   }
 
   @Override public void buildRenderers(ExoMediaPlayer player) {
-    Allocator allocator = new DefaultAllocator(BUFFER_SEGMENT_SIZE);
+    Allocator allocator = AllocatorPool.getInstance()
+        .createAllocator(player, BUFFER_SEGMENT_COUNT * BUFFER_SEGMENT_SIZE);
     Handler mainHandler = player.getMainHandler();
 
     // Build the video and audio renderers.
-    DefaultBandwidthMeter bandwidthMeter = new DefaultBandwidthMeter(mainHandler, null);
+    BandwidthMeter bandwidthMeter =
+        BandwidthEstimator.getInstance(context).createMeter(mainHandler, null);
     DataSource dataSource = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+    if (mediaCache != null) {
+      dataSource = mediaCache.createDataSource(dataSource, uri);
+    }
     ExtractorSampleSource sampleSource = new ExtractorSampleSource(uri, dataSource, allocator,
         BUFFER_SEGMENT_COUNT * BUFFER_SEGMENT_SIZE, mainHandler, player, 0);
     MediaCodecVideoTrackRenderer videoRenderer =
@@ -19,9 +19,10 @@ import android.annotation.TargetApi;
 import android.content.Context;
 import android.media.AudioManager;
 import android.media.MediaCodec;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
-import com.google.android.exoplayer.DefaultLoadControl;
+import android.support.annotation.Nullable;
 import com.google.android.exoplayer.LoadControl;
 import com.google.android.exoplayer.MediaCodecSelector;
 import com.google.android.exoplayer.MediaCodecVideoTrackRenderer;
@@ -40,9 +41,8 @@ import com.google.android.exoplayer.metadata.id3.Id3Frame;
 import com.google.android.exoplayer.metadata.id3.Id3Parser;
 import com.google.android.exoplayer.text.TextTrackRenderer;
 import com.google.android.exoplayer.text.eia608.Eia608TrackRenderer;
+import com.google.android.exoplayer.upstream.BandwidthMeter;
 import com.google.android.exoplayer.upstream.DataSource;
-import com.google.android.exoplayer.upstream.DefaultAllocator;
-import com.google.android.exoplayer.upstream.DefaultBandwidthMeter;
 import com.google.android.exoplayer.upstream.DefaultUriDataSource;
 import com.google.android.exoplayer.util.ManifestFetcher;
 import com.google.android.exoplayer.util.ManifestFetcher.ManifestCallback;
@@ -55,7 +55,7 @@ import java.util.List;
 @TargetApi(Build.VERSION_CODES.JELLY_BEAN)  //
 public class HlsRendererBuilder implements ExoMediaPlayer.RendererBuilder {
 
-  private static final int BUFFER_SEGMENT_SIZE = 64 * 1024;
+  private static final int BUFFER_SEGMENT_SIZE = AllocatorPool.SEGMENT_SIZE;
   private static final int MAIN_BUFFER_SEGMENTS = 254;
   private static final int AUDIO_BUFFER_SEGMENTS = 54;
   private static final int TEXT_BUFFER_SEGMENTS = 2;
@@ -63,18 +63,32 @@ public class HlsRendererBuilder implements ExoMediaPlayer.RendererBuilder {
   private final Context context;
   private final String userAgent;
   private final String url;
+  private final MediaCache mediaCache;
+  private final ManifestCache manifestCache;
 
   private AsyncRendererBuilder currentAsyncBuilder;
 
   public HlsRendererBuilder(Context context, String userAgent, String url) {
+    this(context, userAgent, url, null, null);
+  }
+
+  /**
+   * @param mediaCache cache to read segments through, or null to read them from upstream only
+   * @param manifestCache cache to load the playlist through, or null to request it on each prepare
+   */
+  public HlsRendererBuilder(Context context, String userAgent, String url,
+      @Nullable MediaCache mediaCache, @Nullable ManifestCache manifestCache) {
     this.context = context;
     this.userAgent = userAgent;
     this.url = url;
+    this.mediaCache = mediaCache;
+    this.manifestCache = manifestCache;
   }
 
   @Override
   public void buildRenderers(ExoMediaPlayer player) {
-    currentAsyncBuilder = new AsyncRendererBuilder(context, userAgent, url, player);
+    currentAsyncBuilder =
+        new AsyncRendererBuilder(context, userAgent, url, mediaCache, manifestCache, player);
     currentAsyncBuilder.init();
   }
 
@@ -92,16 +106,21 @@ public class HlsRendererBuilder implements ExoMediaPlayer.RendererBuilder {
     private final String userAgent;
     private final ExoMediaPlayer player;
     private final ManifestFetcher<HlsPlaylist> playlistFetcher;
+    private final MediaCache mediaCache;
+    private final Uri mediaUri;
 
     private boolean canceled;
 
-    public AsyncRendererBuilder(Context context, String userAgent, String url, ExoMediaPlayer player) {
+    public AsyncRendererBuilder(Context context, String userAgent, String url,
+        MediaCache mediaCache, ManifestCache manifestCache, ExoMediaPlayer player) {
       this.context = context;
       this.userAgent = userAgent;
       this.player = player;
+      this.mediaCache = mediaCache;
+      this.mediaUri = Uri.parse(url);
       HlsPlaylistParser parser = new HlsPlaylistParser();
-      playlistFetcher = new ManifestFetcher<>(url, new DefaultUriDataSource(context, userAgent),
-          parser);
+      playlistFetcher = CachedManifestFetcher.create(url,
+          new DefaultUriDataSource(context, userAgent), parser, manifestCache);
     }
 
     public void init() {
@@ -112,6 +131,11 @@ public class HlsRendererBuilder implements ExoMediaPlayer.RendererBuilder {
       canceled = true;
     }
 
+    private DataSource createDataSource(BandwidthMeter bandwidthMeter) {
+      DataSource upstream = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+      return mediaCache != null ? mediaCache.createDataSource(upstream, mediaUri) : upstream;
+    }
+
     @Override
     public void onSingleManifestError(IOException e) {
       if (canceled) {
@@ -128,8 +152,9 @@ public class HlsRendererBuilder implements ExoMediaPlayer.RendererBuilder {
       }
 
       Handler mainHandler = player.getMainHandler();
-      LoadControl loadControl = new DefaultLoadControl(new DefaultAllocator(BUFFER_SEGMENT_SIZE));
-      DefaultBandwidthMeter bandwidthMeter = new DefaultBandwidthMeter();
+      LoadControl loadControl = AllocatorPool.getInstance().createLoadControl(player);
+      BandwidthMeter bandwidthMeter =
+          BandwidthEstimator.getInstance(context).createMeter(null, null);
       PtsTimestampAdjusterProvider timestampAdjusterProvider = new PtsTimestampAdjusterProvider();
 
       boolean haveSubtitles = false;
@@ -141,7 +166,7 @@ public class HlsRendererBuilder implements ExoMediaPlayer.RendererBuilder {
       }
 
       // Build the video/id3 renderers.
-      DataSource dataSource = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+      DataSource dataSource = createDataSource(bandwidthMeter);
       HlsChunkSource chunkSource = new HlsChunkSource(true /* isMaster */, dataSource, manifest,
           DefaultHlsTrackSelector.newDefaultInstance(context), bandwidthMeter,
           timestampAdjusterProvider);
@@ -156,7 +181,7 @@ public class HlsRendererBuilder implements ExoMediaPlayer.RendererBuilder {
       // Build the audio renderer.
       EnhancedMediaCodecAudioTrackRenderer audioRenderer;
       if (haveAudios) {
-        DataSource audioDataSource = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+        DataSource audioDataSource = createDataSource(bandwidthMeter);
         HlsChunkSource audioChunkSource = new HlsChunkSource(false /* isMaster */, audioDataSource,
             manifest, DefaultHlsTrackSelector.newAudioInstance(), bandwidthMeter,
             timestampAdjusterProvider);
@@ -176,7 +201,7 @@ public class HlsRendererBuilder implements ExoMediaPlayer.RendererBuilder {
       // Build the text renderer.
       TrackRenderer textRenderer;
       if (haveSubtitles) {
-        DataSource textDataSource = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+        DataSource textDataSource = createDataSource(bandwidthMeter);
         HlsChunkSource textChunkSource = new HlsChunkSource(false /* isMaster */, textDataSource,
             manifest, DefaultHlsTrackSelector.newSubtitleInstance(), bandwidthMeter,
             timestampAdjusterProvider);
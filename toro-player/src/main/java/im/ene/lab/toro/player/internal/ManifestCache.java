@@ -0,0 +1,362 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro.player.internal;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescription;
+import com.google.android.exoplayer.hls.HlsMediaPlaylist;
+import com.google.android.exoplayer.smoothstreaming.SmoothStreamingManifest;
+import com.google.android.exoplayer.upstream.Loader;
+import com.google.android.exoplayer.upstream.UriDataSource;
+import com.google.android.exoplayer.upstream.UriLoadable;
+import com.google.android.exoplayer.util.ManifestFetcher;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+/**
+ * In memory cache of parsed manifests (DASH, SmoothStreaming) and HLS playlists, by Url. Renderer
+ * builders load their manifest through it: preparing a media again skips the request and the
+ * parsing while its manifest is fresh, and concurrent prepares of one Url share one request.
+ *
+ * For HLS, only the playlist of the media Url is cached: a master playlist, or a media playlist
+ * if the Url is one. Variant playlists listed by a master playlist are loaded by ExoPlayer's
+ * {@link com.google.android.exoplayer.hls.HlsChunkSource}, which has no hook to load them through
+ * this cache, so a prepare still requests the variant it starts with.
+ *
+ * Manifests of live media expire much sooner than on demand ones: their chunk sources refresh them
+ * anyway, a cached one only has to be recent enough to start from.
+ *
+ * Any thread.
+ */
+public final class ManifestCache {
+
+  public static final long DEFAULT_VOD_TTL_MS = 5 * 60 * 1000;
+  public static final long DEFAULT_LIVE_TTL_MS = 2 * 1000;
+  private static final int MAX_ENTRIES = 32;
+
+  private static ManifestCache sInstance;
+  private static boolean sEnabled = true;
+
+  @NonNull public static synchronized ManifestCache getInstance() {
+    if (sInstance == null) {
+      sInstance = new ManifestCache();
+    }
+    return sInstance;
+  }
+
+  /**
+   * Renderer builders of {@link RendererBuilderFactory} load manifests through the default cache
+   * if it is enabled (default), or request them on each prepare otherwise. Applies to players
+   * prepared from now on.
+   */
+  public static synchronized void setEnabled(boolean enabled) {
+    sEnabled = enabled;
+  }
+
+  public static synchronized boolean isEnabled() {
+    return sEnabled;
+  }
+
+  /**
+   * Receives a manifest loaded by {@link #load(String, UriDataSource, UriLoadable.Parser, Looper,
+   * Callback)}, on the given Looper.
+   */
+  interface Callback<T> {
+
+    /**
+     * @param loadStartTimestamp {@link SystemClock#elapsedRealtime()} when its request started
+     * @param loadCompleteTimestamp {@link SystemClock#elapsedRealtime()} when it was parsed
+     */
+    void onManifest(T manifest, long loadStartTimestamp, long loadCompleteTimestamp);
+
+    void onManifestError(IOException error);
+  }
+
+  // Guarded by this
+  private final Map<String, CachedManifest> entries =
+      new LinkedHashMap<String, CachedManifest>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedManifest> eldest) {
+          return size() > MAX_ENTRIES;
+        }
+      };
+  private final Map<String, PendingLoad> pendingLoads = new HashMap<>();
+
+  private long vodTtlMs = DEFAULT_VOD_TTL_MS;
+  private long liveTtlMs = DEFAULT_LIVE_TTL_MS;
+
+  private long hitCount;
+  private long missCount;
+  private long sharedCount;
+
+  public ManifestCache() {
+  }
+
+  public synchronized long getVodTtlMs() {
+    return vodTtlMs;
+  }
+
+  /**
+   * @param ttlMs time an on demand manifest is reused for. 0 disables caching of them, loads are
+   * still shared.
+   */
+  public synchronized void setVodTtlMs(long ttlMs) {
+    if (ttlMs < 0) {
+      throw new IllegalArgumentException("TTL must not be negative.");
+    }
+    this.vodTtlMs = ttlMs;
+  }
+
+  public synchronized long getLiveTtlMs() {
+    return liveTtlMs;
+  }
+
+  /**
+   * @param ttlMs time a live manifest is reused for. 0 disables caching of them, loads are still
+   * shared.
+   */
+  public synchronized void setLiveTtlMs(long ttlMs) {
+    if (ttlMs < 0) {
+      throw new IllegalArgumentException("TTL must not be negative.");
+    }
+    this.liveTtlMs = ttlMs;
+  }
+
+  /**
+   * Forget every cached manifest. Pending loads go on.
+   */
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  /**
+   * @return number of loads served by a cached manifest
+   */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * @return number of loads which requested the manifest
+   */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * @return number of loads which waited for the request of another one
+   */
+  public synchronized long getSharedCount() {
+    return sharedCount;
+  }
+
+  public synchronized void resetStats() {
+    hitCount = 0;
+    missCount = 0;
+    sharedCount = 0;
+  }
+
+  /**
+   * Load a manifest, from this cache if it has a fresh one. A cached manifest is delivered right
+   * away if the caller is on the callback Looper.
+   *
+   * @param parser parser of the manifest. Manifests are cached by Url and parser type.
+   * @param looper Looper to call the callback on
+   */
+  <T> void load(@NonNull String url, @NonNull UriDataSource dataSource,
+      @NonNull UriLoadable.Parser<T> parser, @NonNull Looper looper,
+      @NonNull Callback<T> callback) {
+    final String key = parser.getClass().getName() + ' ' + url;
+    final Waiter<T> waiter = new Waiter<>(looper, callback);
+    CachedManifest entry;
+    PendingLoad load = null;
+    boolean startLoad = false;
+    synchronized (this) {
+      entry = entries.get(key);
+      if (entry != null && entry.expiresAt <= SystemClock.elapsedRealtime()) {
+        entries.remove(key);
+        entry = null;
+      }
+
+      if (entry != null) {
+        hitCount++;
+      } else {
+        load = pendingLoads.get(key);
+        if (load == null) {
+          load = new PendingLoad(key, new UriLoadable<>(url, dataSource, parser));
+          pendingLoads.put(key, load);
+          startLoad = true;
+          missCount++;
+        } else {
+          sharedCount++;
+        }
+        load.waiters.add(waiter);
+      }
+    }
+
+    if (entry != null) {
+      waiter.deliver(entry);
+    } else if (startLoad) {
+      load.start(looper);
+    }
+  }
+
+  private synchronized long getTtlMs(Object manifest) {
+    return isLive(manifest) ? liveTtlMs : vodTtlMs;
+  }
+
+  private static boolean isLive(Object manifest) {
+    if (manifest instanceof MediaPresentationDescription) {
+      return ((MediaPresentationDescription) manifest).dynamic;
+    }
+    if (manifest instanceof SmoothStreamingManifest) {
+      return ((SmoothStreamingManifest) manifest).isLive;
+    }
+    if (manifest instanceof HlsMediaPlaylist) {
+      return ((HlsMediaPlaylist) manifest).live;
+    }
+    // HLS master playlists list variants only, they don't change while a live stream goes on
+    return false;
+  }
+
+  private static final class CachedManifest {
+
+    final Object manifest;
+    final long loadStartTimestamp;
+    final long loadCompleteTimestamp;
+    final long expiresAt;
+
+    CachedManifest(Object manifest, long loadStartTimestamp, long loadCompleteTimestamp,
+        long expiresAt) {
+      this.manifest = manifest;
+      this.loadStartTimestamp = loadStartTimestamp;
+      this.loadCompleteTimestamp = loadCompleteTimestamp;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private static final class Waiter<T> {
+
+    private final Looper looper;
+    private final Callback<T> callback;
+
+    Waiter(Looper looper, Callback<T> callback) {
+      this.looper = looper;
+      this.callback = callback;
+    }
+
+    void deliver(@NonNull final CachedManifest entry) {
+      if (Looper.myLooper() == looper) {
+        onManifest(entry);
+      } else {
+        new Handler(looper).post(new Runnable() {
+          @Override public void run() {
+            onManifest(entry);
+          }
+        });
+      }
+    }
+
+    void deliverError(@NonNull final IOException error) {
+      if (Looper.myLooper() == looper) {
+        callback.onManifestError(error);
+      } else {
+        new Handler(looper).post(new Runnable() {
+          @Override public void run() {
+            callback.onManifestError(error);
+          }
+        });
+      }
+    }
+
+    @SuppressWarnings("unchecked") private void onManifest(CachedManifest entry) {
+      // Entries are keyed by parser type, so the manifest is a T
+      callback.onManifest((T) entry.manifest, entry.loadStartTimestamp,
+          entry.loadCompleteTimestamp);
+    }
+  }
+
+  /**
+   * One request of a manifest, and the loads waiting for it.
+   */
+  private final class PendingLoad implements Loader.Callback {
+
+    private final String key;
+    private final UriLoadable<?> loadable;
+    private final Loader loader = new Loader("manifestLoader:cache");
+    // Guarded by ManifestCache.this
+    private final List<Waiter<?>> waiters = new ArrayList<>();
+
+    private long loadStartTimestamp;
+
+    PendingLoad(String key, UriLoadable<?> loadable) {
+      this.key = key;
+      this.loadable = loadable;
+    }
+
+    void start(Looper looper) {
+      loadStartTimestamp = SystemClock.elapsedRealtime();
+      loader.startLoading(looper, loadable, this);
+    }
+
+    @Override public void onLoadCompleted(Loader.Loadable loadable) {
+      loader.release();
+      Object manifest = this.loadable.getResult();
+      long loadCompleteTimestamp = SystemClock.elapsedRealtime();
+      long ttlMs = getTtlMs(manifest);
+      CachedManifest entry = new CachedManifest(manifest, loadStartTimestamp, loadCompleteTimestamp,
+          loadCompleteTimestamp + ttlMs);
+      for (Waiter<?> waiter : finish(ttlMs > 0 ? entry : null)) {
+        waiter.deliver(entry);
+      }
+    }
+
+    @Override public void onLoadCanceled(Loader.Loadable loadable) {
+      // Not canceled by this cache, handled as ManifestFetcher does.
+      onLoadError(loadable, new ManifestFetcher.ManifestIOException(new CancellationException()));
+    }
+
+    @Override public void onLoadError(Loader.Loadable loadable, IOException exception) {
+      loader.release();
+      for (Waiter<?> waiter : finish(null)) {
+        waiter.deliverError(exception);
+      }
+    }
+
+    /**
+     * @param entry entry to cache, or null
+     * @return the loads to deliver the result to. Later loads start a new request or hit the entry.
+     */
+    private List<Waiter<?>> finish(CachedManifest entry) {
+      synchronized (ManifestCache.this) {
+        pendingLoads.remove(key);
+        if (entry != null) {
+          entries.put(key, entry);
+        }
+        return new ArrayList<>(waiters);
+      }
+    }
+  }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro.player.internal;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.cache.Cache;
+import com.google.android.exoplayer.upstream.cache.CacheSpan;
+import com.google.android.exoplayer.upstream.cache.SimpleCache;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded disk cache of media bytes. Renderer builders read media through {@link
+ * #createDataSource(DataSource, Uri)}: scrolling back to a Video, looping it or opening it in
+ * another View reads the cached bytes instead of downloading them again.
+ *
+ * Least recently used data is evicted first, except data of pinned media: {@link
+ * im.ene.lab.toro.player.widget.ToroVideoView}s pin their media while they hold a player, so
+ * media near the viewport (the ones Toro prepares) stay cached. Pinned data may exceed the max
+ * size until it is unpinned, it is then evicted in background.
+ *
+ * Any thread.
+ */
+public final class MediaCache {
+
+  public static final long DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+  // Eviction unit: data is written to files of at most this size
+  static final long MAX_FILE_BYTES = 2 * 1024 * 1024;
+  // Learnt content lengths of unbounded requests, see MediaCacheDataSource
+  private static final int MAX_CONTENT_LENGTHS = 256;
+  private static final String DIRECTORY = "toro_media";
+  private static final String TAG = "ToroMediaCache";
+
+  private static MediaCache sInstance;
+  private static boolean sEnabled = true;
+
+  /**
+   * @return the default cache, in the application cache directory
+   */
+  @NonNull public static synchronized MediaCache getInstance(@NonNull Context context) {
+    if (sInstance == null) {
+      File directory = new File(context.getApplicationContext().getCacheDir(), DIRECTORY);
+      sInstance = new MediaCache(directory, DEFAULT_MAX_BYTES);
+    }
+    return sInstance;
+  }
+
+  /**
+   * Renderer builders of {@link RendererBuilderFactory} read through the default cache if it is
+   * enabled (default), or straight from the network otherwise. Applies to players prepared from
+   * now on.
+   */
+  public static synchronized void setEnabled(boolean enabled) {
+    sEnabled = enabled;
+  }
+
+  public static synchronized boolean isEnabled() {
+    return sEnabled;
+  }
+
+  private final Cache cache;
+  private final PinningCacheEvictor evictor;
+
+  // Media key -> pin count
+  private final Map<String, Integer> pins = new HashMap<>();
+  // Data key -> key of its media, for segmented media whose data keys are not the media's one.
+  // Pinned media only: entries of a media are removed when it is unpinned.
+  private final Map<String, String> owners = new HashMap<>();
+  private final Map<String, Long> contentLengths =
+      new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+          return size() > MAX_CONTENT_LENGTHS;
+        }
+      };
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong bytesFromCache = new AtomicLong();
+  private final AtomicLong bytesFromNetwork = new AtomicLong();
+
+  private final AtomicBoolean trimPending = new AtomicBoolean();
+  private Handler trimHandler;  // Lazily started, guarded by this
+
+  /**
+   * A cache in its own directory, eg. for tests. A directory must be used by one cache only.
+   *
+   * @param directory directory of the cache files
+   * @param maxBytes max size of unpinned data
+   */
+  public MediaCache(@NonNull File directory, long maxBytes) {
+    this.evictor = new PinningCacheEvictor(this, maxBytes);
+    this.cache = new SimpleCache(directory, evictor);
+  }
+
+  /**
+   * @param upstream source of the media bytes, eg. a network one
+   * @param media Uri of the media. Requests of segmented media (HLS, DASH...) belong to it.
+   * @return a source reading through this cache. Non network Uris are read from upstream.
+   */
+  @NonNull public DataSource createDataSource(@NonNull DataSource upstream, @NonNull Uri media) {
+    return new MediaCacheDataSource(this, upstream, media.toString());
+  }
+
+  /**
+   * Keep the data of this media cached until it is unpinned. Pins are counted.
+   */
+  public void pin(@NonNull Uri media) {
+    String key = media.toString();
+    synchronized (pins) {
+      Integer count = pins.get(key);
+      pins.put(key, count == null ? 1 : count + 1);
+    }
+  }
+
+  /**
+   * Data kept over the max size only for this media is evicted in background once it is unpinned
+   * as many times as it was pinned: unpinning doesn't wait for disk operations.
+   */
+  public void unpin(@NonNull Uri media) {
+    String key = media.toString();
+    synchronized (pins) {
+      Integer count = pins.get(key);
+      if (count != null && count > 1) {
+        pins.put(key, count - 1);
+        return;
+      }
+
+      pins.remove(key);
+      Iterator<String> mediaKeys = owners.values().iterator();
+      while (mediaKeys.hasNext()) {
+        if (mediaKeys.next().equals(key)) {
+          mediaKeys.remove();
+        }
+      }
+    }
+    scheduleTrim();
+  }
+
+  public long getMaxBytes() {
+    return evictor.getMaxBytes();
+  }
+
+  /**
+   * @param maxBytes max size of unpinned data. Data over it is evicted right away.
+   */
+  public void setMaxBytes(long maxBytes) {
+    evictor.setMaxBytes(maxBytes);
+    evictor.trim(cache);
+  }
+
+  /**
+   * @return size of the cached data, in bytes
+   */
+  public long getCacheSpace() {
+    return cache.getCacheSpace();
+  }
+
+  /**
+   * Remove every cached data, pinned or not. Data being read or written stays readable.
+   */
+  public void clear() {
+    // Spans are replaced when read: hold the lock so the ones found are the ones removed
+    synchronized (cache) {
+      for (String key : cache.getKeys()) {
+        NavigableSet<CacheSpan> spans = cache.getCachedSpans(key);
+        if (spans != null) {
+          for (CacheSpan span : spans) {
+            cache.removeSpan(span);
+          }
+        }
+      }
+    }
+    synchronized (contentLengths) {
+      contentLengths.clear();
+    }
+  }
+
+  /**
+   * @return number of reads served from the cache
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * @return number of reads served from upstream
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * @return number of bytes read from the cache: the bytes not downloaded again
+   */
+  public long getBytesFromCache() {
+    return bytesFromCache.get();
+  }
+
+  /**
+   * @return number of bytes read from upstream
+   */
+  public long getBytesFromNetwork() {
+    return bytesFromNetwork.get();
+  }
+
+  public void resetStats() {
+    hitCount.set(0);
+    missCount.set(0);
+    bytesFromCache.set(0);
+    bytesFromNetwork.set(0);
+  }
+
+  @NonNull Cache getCache() {
+    return cache;
+  }
+
+  void onCacheRead(boolean hit) {
+    (hit ? hitCount : missCount).incrementAndGet();
+  }
+
+  void onBytesRead(boolean fromCache, int bytes) {
+    (fromCache ? bytesFromCache : bytesFromNetwork).addAndGet(bytes);
+  }
+
+  void onKeyUsed(@NonNull String key, @NonNull String mediaKey) {
+    if (!key.equals(mediaKey)) {
+      synchronized (pins) {
+        // Only pinned media need their data keys known. Data cached before a pin is recognized
+        // once it is read again.
+        if (pins.containsKey(mediaKey)) {
+          owners.put(key, mediaKey);
+        }
+      }
+    }
+  }
+
+  void onKeyEvicted(@NonNull String key) {
+    synchronized (pins) {
+      owners.remove(key);
+    }
+  }
+
+  boolean isPinned(@NonNull String key) {
+    synchronized (pins) {
+      String mediaKey = owners.get(key);
+      return pins.containsKey(mediaKey != null ? mediaKey : key);
+    }
+  }
+
+  /**
+   * @return total length of the data of this key, or {@link C#LENGTH_UNBOUNDED} if unknown
+   */
+  long getContentLength(@NonNull String key) {
+    synchronized (contentLengths) {
+      Long length = contentLengths.get(key);
+      return length != null ? length : C.LENGTH_UNBOUNDED;
+    }
+  }
+
+  void setContentLength(@NonNull String key, long length) {
+    synchronized (contentLengths) {
+      contentLengths.put(key, length);
+    }
+  }
+
+  private void scheduleTrim() {
+    // A pending trim covers every unpin before it runs
+    if (!trimPending.compareAndSet(false, true)) {
+      return;
+    }
+
+    Handler handler;
+    synchronized (this) {
+      if (trimHandler == null) {
+        HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        trimHandler = new Handler(thread.getLooper());
+      }
+      handler = trimHandler;
+    }
+
+    handler.post(new Runnable() {
+      @Override public void run() {
+        trimPending.set(false);
+        evictor.trim(cache);
+      }
+    });
+  }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro.player.internal;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.util.Log;
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.FileDataSource;
+import com.google.android.exoplayer.upstream.HttpDataSource;
+import com.google.android.exoplayer.upstream.UriDataSource;
+import com.google.android.exoplayer.upstream.cache.Cache;
+import com.google.android.exoplayer.upstream.cache.CacheDataSink;
+import com.google.android.exoplayer.upstream.cache.CacheSpan;
+import java.io.IOException;
+
+/**
+ * {@link DataSource} reading through a {@link MediaCache}: cached ranges are read from disk, others
+ * from upstream while being written to the cache.
+ *
+ * Unlike {@link com.google.android.exoplayer.upstream.cache.CacheDataSource}, requests of unknown
+ * length are cached too: progressive media (and most HLS segments) are requested that way. Their
+ * length is learnt from the first upstream response. Ranges are only written by the source which
+ * locked them: other sources read the same range from upstream meanwhile.
+ *
+ * Used by one loader thread at a time.
+ */
+public final class MediaCacheDataSource implements UriDataSource {
+
+  private static final String TAG = "MediaCacheDataSource";
+
+  private final MediaCache owner;
+  private final Cache cache;
+  private final DataSource upstream;
+  private final FileDataSource cacheReadSource = new FileDataSource();
+  private final CacheDataSink cacheSink;
+  private final String mediaKey;
+
+  private DataSource currentSource;
+  private Uri uri;
+  private String key;
+  private int flags;
+  private long readPosition;
+  private long bytesRemaining;
+  // True if the current source stops before the requested range does
+  private boolean currentEndsEarly;
+  // Hole locked by this source, being written
+  private CacheSpan lockedSpan;
+  private long bytesToWrite;
+  private boolean ignoreCache;
+
+  MediaCacheDataSource(@NonNull MediaCache owner, @NonNull DataSource upstream,
+      @NonNull String mediaKey) {
+    this.owner = owner;
+    this.cache = owner.getCache();
+    this.upstream = upstream;
+    this.cacheSink = new CacheDataSink(cache, MediaCache.MAX_FILE_BYTES);
+    this.mediaKey = mediaKey;
+  }
+
+  @Override public long open(DataSpec dataSpec) throws IOException {
+    uri = dataSpec.uri;
+    key = dataSpec.key != null ? dataSpec.key : uri.toString();
+    flags = dataSpec.flags;
+    readPosition = dataSpec.position;
+    bytesRemaining = dataSpec.length;
+    if (bytesRemaining == C.LENGTH_UNBOUNDED) {
+      long contentLength = owner.getContentLength(key);
+      if (contentLength != C.LENGTH_UNBOUNDED) {
+        bytesRemaining = Math.max(0, contentLength - readPosition);
+      }
+    }
+
+    if (!isCacheable(uri)) {
+      currentSource = upstream;
+      currentEndsEarly = false;
+      return upstream.open(dataSpec);
+    }
+
+    owner.onKeyUsed(key, mediaKey);
+    if (bytesRemaining != 0) {
+      openNextSource();
+    }
+    return bytesRemaining;
+  }
+
+  @Override public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (currentSource == null || bytesRemaining == 0) {
+      return C.RESULT_END_OF_INPUT;
+    }
+
+    final boolean fromCache = currentSource == cacheReadSource;
+    int bytesRead;
+    try {
+      bytesRead = currentSource.read(buffer, offset, readLength);
+    } catch (IOException e) {
+      if (fromCache) {
+        // Bypass the cache from now on, the caller retries
+        ignoreCache = true;
+      }
+      throw e;
+    }
+
+    if (bytesRead >= 0) {
+      owner.onBytesRead(fromCache, bytesRead);
+      if (lockedSpan != null) {
+        write(buffer, offset, (int) Math.min(bytesRead, bytesToWrite));
+      }
+      readPosition += bytesRead;
+      if (bytesRemaining != C.LENGTH_UNBOUNDED) {
+        bytesRemaining -= bytesRead;
+      }
+      return bytesRead;
+    }
+
+    boolean hasMore = currentEndsEarly;
+    closeCurrentSource();
+    if (hasMore && bytesRemaining != 0) {
+      openNextSource();
+      return read(buffer, offset, readLength);
+    }
+    return C.RESULT_END_OF_INPUT;
+  }
+
+  @Override public String getUri() {
+    return uri != null ? uri.toString() : null;
+  }
+
+  @Override public void close() throws IOException {
+    closeCurrentSource();
+  }
+
+  private static boolean isCacheable(Uri uri) {
+    String scheme = uri.getScheme();
+    return "http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme);
+  }
+
+  /**
+   * Open the cache file spanning the read position if there is one, else upstream. Upstream reads
+   * are bounded by the next cached range, so it is read from disk afterwards.
+   */
+  private void openNextSource() throws IOException {
+    CacheSpan span = ignoreCache ? null : cache.startReadWriteNonBlocking(key, readPosition);
+    if (span != null && span.isCached) {
+      long filePosition = readPosition - span.position;
+      long length = span.length - filePosition;
+      if (bytesRemaining != C.LENGTH_UNBOUNDED) {
+        length = Math.min(length, bytesRemaining);
+      }
+      currentEndsEarly = bytesRemaining == C.LENGTH_UNBOUNDED || length < bytesRemaining;
+      currentSource = cacheReadSource;
+      currentSource.open(
+          new DataSpec(Uri.fromFile(span.file), readPosition, filePosition, length, key, flags));
+      owner.onCacheRead(true);
+      return;
+    }
+
+    // span is null if another source writes this key: read from upstream only
+    lockedSpan = span;
+    long length = bytesRemaining;
+    if (span != null && !span.isOpenEnded()) {
+      length = length == C.LENGTH_UNBOUNDED ? span.length : Math.min(span.length, length);
+    }
+    currentEndsEarly = bytesRemaining == C.LENGTH_UNBOUNDED
+        ? length != C.LENGTH_UNBOUNDED : length < bytesRemaining;
+
+    long resolvedLength;
+    try {
+      currentSource = upstream;
+      resolvedLength = upstream.open(new DataSpec(uri, readPosition, length, key, flags));
+    } catch (HttpDataSource.InvalidResponseCodeException e) {
+      if (e.responseCode == 416 && bytesRemaining == C.LENGTH_UNBOUNDED && readPosition > 0) {
+        // Cached data reaches the end of a stream of unknown length
+        closeCurrentSource();
+        owner.setContentLength(key, readPosition);
+        bytesRemaining = 0;
+        return;
+      }
+      closeCurrentSource();
+      throw e;
+    } catch (IOException e) {
+      closeCurrentSource();
+      throw e;
+    }
+    owner.onCacheRead(false);
+
+    if (length == C.LENGTH_UNBOUNDED && resolvedLength != C.LENGTH_UNBOUNDED) {
+      // Now the length is known, the rest of the stream can be cached
+      length = resolvedLength;
+      bytesRemaining = resolvedLength;
+      owner.setContentLength(key, readPosition + resolvedLength);
+    }
+
+    if (lockedSpan != null) {
+      if (length == C.LENGTH_UNBOUNDED) {
+        // A cache file needs a length
+        cache.releaseHoleSpan(lockedSpan);
+        lockedSpan = null;
+      } else {
+        openSink(length);
+      }
+    }
+  }
+
+  private void openSink(long length) {
+    try {
+      cacheSink.open(new DataSpec(uri, readPosition, length, key, flags));
+      bytesToWrite = length;
+    } catch (IOException e) {
+      Log.w(TAG, "Cache bypassed: " + e.getMessage());
+      cache.releaseHoleSpan(lockedSpan);
+      lockedSpan = null;
+    }
+  }
+
+  private void write(byte[] buffer, int offset, int length) {
+    try {
+      cacheSink.write(buffer, offset, length);
+      bytesToWrite -= length;
+    } catch (IOException e) {
+      // Disk is full or gone: the read itself succeeded, so keep reading from upstream only
+      Log.w(TAG, "Cache bypassed: " + e.getMessage());
+      ignoreCache = true;
+      bytesToWrite = 0;
+    }
+
+    if (bytesToWrite == 0) {
+      closeSink();
+    }
+  }
+
+  private void closeSink() {
+    if (lockedSpan == null) {
+      return;
+    }
+
+    try {
+      // Commits the bytes written so far, even if the range is not complete
+      cacheSink.close();
+    } catch (IOException e) {
+      Log.w(TAG, "Cache bypassed: " + e.getMessage());
+    } finally {
+      cache.releaseHoleSpan(lockedSpan);
+      lockedSpan = null;
+    }
+  }
+
+  private void closeCurrentSource() throws IOException {
+    if (currentSource == null) {
+      return;
+    }
+
+    try {
+      currentSource.close();
+    } finally {
+      currentSource = null;
+      closeSink();
+    }
+  }
+}
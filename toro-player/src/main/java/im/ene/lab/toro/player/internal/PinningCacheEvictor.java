@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro.player.internal;
+
+import android.support.annotation.NonNull;
+import com.google.android.exoplayer.upstream.cache.Cache;
+import com.google.android.exoplayer.upstream.cache.CacheEvictor;
+import com.google.android.exoplayer.upstream.cache.CacheSpan;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * {@link com.google.android.exoplayer.upstream.cache.LeastRecentlyUsedCacheEvictor} which skips
+ * spans of pinned media. If only pinned spans are left, the cache grows over its max size until
+ * they are unpinned.
+ *
+ * Called by {@link Cache} with its lock held, {@link #trim(Cache)} takes that lock.
+ *
+ * @hide
+ */
+final class PinningCacheEvictor implements CacheEvictor, Comparator<CacheSpan> {
+
+  private final MediaCache owner;
+  private final TreeSet<CacheSpan> leastRecentlyUsed = new TreeSet<>(this);
+  // Number of cached spans per key, to forget keys which have none left
+  private final Map<String, Integer> spanCounts = new HashMap<>();
+
+  private volatile long maxBytes;
+  private long currentSize;
+
+  PinningCacheEvictor(@NonNull MediaCache owner, long maxBytes) {
+    this.owner = owner;
+    this.maxBytes = maxBytes;
+  }
+
+  long getMaxBytes() {
+    return maxBytes;
+  }
+
+  void setMaxBytes(long maxBytes) {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("Max bytes must not be negative.");
+    }
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Evict now, eg. after the max size is lowered or a media is unpinned.
+   */
+  void trim(@NonNull Cache cache) {
+    synchronized (cache) {
+      evict(cache, 0);
+    }
+  }
+
+  @Override public void onCacheInitialized() {
+    // Do nothing.
+  }
+
+  @Override public void onStartFile(Cache cache, String key, long position, long length) {
+    evict(cache, length);
+  }
+
+  @Override public void onSpanAdded(Cache cache, CacheSpan span) {
+    leastRecentlyUsed.add(span);
+    currentSize += span.length;
+    Integer count = spanCounts.get(span.key);
+    spanCounts.put(span.key, count == null ? 1 : count + 1);
+    evict(cache, 0);
+  }
+
+  @Override public void onSpanRemoved(Cache cache, CacheSpan span) {
+    leastRecentlyUsed.remove(span);
+    currentSize -= span.length;
+    Integer count = spanCounts.get(span.key);
+    if (count == null || count <= 1) {
+      spanCounts.remove(span.key);
+      owner.onKeyEvicted(span.key);
+    } else {
+      spanCounts.put(span.key, count - 1);
+    }
+  }
+
+  @Override public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    leastRecentlyUsed.remove(oldSpan);
+    leastRecentlyUsed.add(newSpan);
+  }
+
+  @Override public int compare(CacheSpan lhs, CacheSpan rhs) {
+    long lastAccessTimestampDelta = lhs.lastAccessTimestamp - rhs.lastAccessTimestamp;
+    if (lastAccessTimestampDelta == 0) {
+      // Use the standard compareTo method as a tie-break.
+      return lhs.compareTo(rhs);
+    }
+    return lhs.lastAccessTimestamp < rhs.lastAccessTimestamp ? -1 : 1;
+  }
+
+  private void evict(Cache cache, long requiredSpace) {
+    while (currentSize + requiredSpace > maxBytes) {
+      CacheSpan victim = null;
+      for (CacheSpan span : leastRecentlyUsed) {
+        if (!owner.isPinned(span.key)) {
+          victim = span;
+          break;
+        }
+      }
+
+      if (victim == null) {
+        return;
+      }
+      cache.removeSpan(victim);  // Calls onSpanRemoved()
+    }
+  }
+}
@@ -32,7 +32,9 @@ import im.ene.lab.toro.player.ExoVideo;
 public final class RendererBuilderFactory {
 
   /**
-   * Create a renderer builder which can build the given video.
+   * Create a renderer builder which can build the given video. Its media is read through the
+   * default {@link MediaCache} and its manifest loaded through the default {@link ManifestCache},
+   * if they are enabled.
    *
    * @param context The context (ex {@link android.app.Activity} in which the video has been
    * created.
@@ -40,22 +42,27 @@ public final class RendererBuilderFactory {
    */
   public static ExoMediaPlayer.RendererBuilder createRendererBuilder(Context context, Media media) {
     final String userAgent = Util.getUserAgent(context, "Toro");
+    final MediaCache mediaCache = MediaCache.isEnabled() ? MediaCache.getInstance(context) : null;
+    final ManifestCache manifestCache =
+        ManifestCache.isEnabled() ? ManifestCache.getInstance() : null;
     int contentType = inferContentType(media.getMediaUri(), "");
     switch (contentType) {
       case Util.TYPE_SS:
         return new SmoothStreamingRendererBuilder(context, userAgent,
-            media.getMediaUri().toString(), new SmoothStreamingTestMediaDrmCallback());
+            media.getMediaUri().toString(), new SmoothStreamingTestMediaDrmCallback(), mediaCache,
+            manifestCache);
       case Util.TYPE_HLS:
-        return new HlsRendererBuilder(context, userAgent, media.getMediaUri().toString());
+        return new HlsRendererBuilder(context, userAgent, media.getMediaUri().toString(),
+            mediaCache, manifestCache);
       case Util.TYPE_DASH:
         WidevineTestMediaDrmCallback callback =
             media instanceof ExoVideo ? new WidevineTestMediaDrmCallback(
                 ((ExoVideo) media).getContentId(), ((ExoVideo) media).getProvider())
                 : new WidevineTestMediaDrmCallback(null, null);
         return new DashRendererBuilder(context, userAgent, media.getMediaUri().toString(),
-            callback);
+            callback, mediaCache, manifestCache);
       case Util.TYPE_OTHER:
-        return new ExtractorRendererBuilder(context, userAgent, media.getMediaUri());
+        return new ExtractorRendererBuilder(context, userAgent, media.getMediaUri(), mediaCache);
       default:
         throw new IllegalStateException("Unsupported type: " + contentType);
     }
@@ -19,9 +19,10 @@ import android.annotation.TargetApi;
 import android.content.Context;
 import android.media.AudioManager;
 import android.media.MediaCodec;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
-import com.google.android.exoplayer.DefaultLoadControl;
+import android.support.annotation.Nullable;
 import com.google.android.exoplayer.LoadControl;
 import com.google.android.exoplayer.MediaCodecSelector;
 import com.google.android.exoplayer.MediaCodecVideoTrackRenderer;
@@ -39,9 +40,8 @@ import com.google.android.exoplayer.smoothstreaming.SmoothStreamingChunkSource;
 import com.google.android.exoplayer.smoothstreaming.SmoothStreamingManifest;
 import com.google.android.exoplayer.smoothstreaming.SmoothStreamingManifestParser;
 import com.google.android.exoplayer.text.TextTrackRenderer;
+import com.google.android.exoplayer.upstream.BandwidthMeter;
 import com.google.android.exoplayer.upstream.DataSource;
-import com.google.android.exoplayer.upstream.DefaultAllocator;
-import com.google.android.exoplayer.upstream.DefaultBandwidthMeter;
 import com.google.android.exoplayer.upstream.DefaultHttpDataSource;
 import com.google.android.exoplayer.upstream.DefaultUriDataSource;
 import com.google.android.exoplayer.util.ManifestFetcher;
@@ -54,7 +54,7 @@ import java.io.IOException;
 @TargetApi(Build.VERSION_CODES.JELLY_BEAN)  //
 public class SmoothStreamingRendererBuilder implements ExoMediaPlayer.RendererBuilder {
 
-  private static final int BUFFER_SEGMENT_SIZE = 64 * 1024;
+  private static final int BUFFER_SEGMENT_SIZE = AllocatorPool.SEGMENT_SIZE;
   private static final int VIDEO_BUFFER_SEGMENTS = 200;
   private static final int AUDIO_BUFFER_SEGMENTS = 54;
   private static final int TEXT_BUFFER_SEGMENTS = 2;
@@ -64,19 +64,38 @@ public class SmoothStreamingRendererBuilder implements ExoMediaPlayer.RendererBu
   private final String userAgent;
   private final String url;
   private final MediaDrmCallback drmCallback;
+  private final MediaCache mediaCache;
+  private final ManifestCache manifestCache;
+  // Media key of the cache, the Uri the builder is created for
+  private final Uri mediaUri;
 
   private AsyncRendererBuilder currentAsyncBuilder;
 
   public SmoothStreamingRendererBuilder(Context context, String userAgent, String url,
       MediaDrmCallback drmCallback) {
+    this(context, userAgent, url, drmCallback, null, null);
+  }
+
+  /**
+   * @param mediaCache cache to read chunks through, or null to read them from upstream only
+   * @param manifestCache cache to load the manifest through, or null to request it on each prepare
+   */
+  public SmoothStreamingRendererBuilder(Context context, String userAgent, String url,
+      MediaDrmCallback drmCallback, @Nullable MediaCache mediaCache,
+      @Nullable ManifestCache manifestCache) {
     this.context = context;
     this.userAgent = userAgent;
     this.url = Util.toLowerInvariant(url).endsWith("/manifest") ? url : url + "/Manifest";
     this.drmCallback = drmCallback;
+    this.mediaCache = mediaCache;
+    this.manifestCache = manifestCache;
+    this.mediaUri = Uri.parse(url);
   }
 
   @Override public void buildRenderers(ExoMediaPlayer player) {
-    currentAsyncBuilder = new AsyncRendererBuilder(context, userAgent, url, drmCallback, player);
+    currentAsyncBuilder =
+        new AsyncRendererBuilder(context, userAgent, url, drmCallback, mediaCache, mediaUri,
+            manifestCache, player);
     currentAsyncBuilder.init();
   }
 
@@ -93,20 +112,25 @@ public class SmoothStreamingRendererBuilder implements ExoMediaPlayer.RendererBu
     private final Context context;
     private final String userAgent;
     private final MediaDrmCallback drmCallback;
+    private final MediaCache mediaCache;
+    private final Uri mediaUri;
     private final ExoMediaPlayer player;
     private final ManifestFetcher<SmoothStreamingManifest> manifestFetcher;
 
     private boolean canceled;
 
     public AsyncRendererBuilder(Context context, String userAgent, String url,
-        MediaDrmCallback drmCallback, ExoMediaPlayer player) {
+        MediaDrmCallback drmCallback, MediaCache mediaCache, Uri mediaUri,
+        ManifestCache manifestCache, ExoMediaPlayer player) {
       this.context = context;
       this.userAgent = userAgent;
       this.drmCallback = drmCallback;
+      this.mediaCache = mediaCache;
+      this.mediaUri = mediaUri;
       this.player = player;
       SmoothStreamingManifestParser parser = new SmoothStreamingManifestParser();
-      manifestFetcher =
-          new ManifestFetcher<>(url, new DefaultHttpDataSource(userAgent, null), parser);
+      manifestFetcher = CachedManifestFetcher.create(url,
+          new DefaultHttpDataSource(userAgent, null), parser, manifestCache);
     }
 
     public void init() {
@@ -117,6 +141,11 @@ public class SmoothStreamingRendererBuilder implements ExoMediaPlayer.RendererBu
       canceled = true;
     }
 
+    private DataSource createDataSource(BandwidthMeter bandwidthMeter) {
+      DataSource upstream = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+      return mediaCache != null ? mediaCache.createDataSource(upstream, mediaUri) : upstream;
+    }
+
     @Override public void onSingleManifestError(IOException exception) {
       if (canceled) {
         return;
@@ -131,8 +160,9 @@ public class SmoothStreamingRendererBuilder implements ExoMediaPlayer.RendererBu
       }
 
       Handler mainHandler = player.getMainHandler();
-      LoadControl loadControl = new DefaultLoadControl(new DefaultAllocator(BUFFER_SEGMENT_SIZE));
-      DefaultBandwidthMeter bandwidthMeter = new DefaultBandwidthMeter(mainHandler, player);
+      LoadControl loadControl = AllocatorPool.getInstance().createLoadControl(player);
+      BandwidthMeter bandwidthMeter =
+          BandwidthEstimator.getInstance(context).createMeter(mainHandler, player);
 
       // Check drm support if necessary.
       DrmSessionManager drmSessionManager = null;
@@ -153,7 +183,7 @@ public class SmoothStreamingRendererBuilder implements ExoMediaPlayer.RendererBu
       }
 
       // Build the video renderer.
-      DataSource videoDataSource = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+      DataSource videoDataSource = createDataSource(bandwidthMeter);
       ChunkSource videoChunkSource = new SmoothStreamingChunkSource(manifestFetcher,
           DefaultSmoothStreamingTrackSelector.newVideoInstance(context, true, false),
           videoDataSource, new AdaptiveEvaluator(bandwidthMeter), LIVE_EDGE_LATENCY_MS);
@@ -166,7 +196,7 @@ public class SmoothStreamingRendererBuilder implements ExoMediaPlayer.RendererBu
               mainHandler, player, 50);
 
       // Build the audio renderer.
-      DataSource audioDataSource = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+      DataSource audioDataSource = createDataSource(bandwidthMeter);
       ChunkSource audioChunkSource = new SmoothStreamingChunkSource(manifestFetcher,
           DefaultSmoothStreamingTrackSelector.newAudioInstance(), audioDataSource, null,
           LIVE_EDGE_LATENCY_MS);
@@ -179,7 +209,7 @@ public class SmoothStreamingRendererBuilder implements ExoMediaPlayer.RendererBu
               AudioCapabilities.getCapabilities(context), AudioManager.STREAM_MUSIC);
 
       // Build the text renderer.
-      DataSource textDataSource = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+      DataSource textDataSource = createDataSource(bandwidthMeter);
       ChunkSource textChunkSource = new SmoothStreamingChunkSource(manifestFetcher,
           DefaultSmoothStreamingTrackSelector.newTextInstance(), textDataSource, null,
           LIVE_EDGE_LATENCY_MS);
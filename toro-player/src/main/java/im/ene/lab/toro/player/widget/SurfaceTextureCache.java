@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro.player.widget;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.graphics.SurfaceTexture;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.View;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SurfaceTextures kept across detach, keyed by their {@link ToroVideoView}. A retained View keeps
+ * its player rendering into the same texture, so re-attaching it costs neither a new Surface nor a
+ * new decoder output configuration, nor a prepare. Each entry holds a live player, so the cache is
+ * small and least recently retained entries are evicted: their View releases its player and the
+ * texture.
+ *
+ * Entries of a View are evicted when its Activity is destroyed, so it isn't kept reachable. Those
+ * of Activities which are finishing are evicted on next {@link #put} already.
+ *
+ * Main thread only.
+ *
+ * @hide
+ */
+final class SurfaceTextureCache implements Application.ActivityLifecycleCallbacks {
+
+  static final int DEFAULT_MAX_SIZE = 2;
+
+  private static SurfaceTextureCache sInstance;
+
+  static SurfaceTextureCache getInstance() {
+    if (sInstance == null) {
+      sInstance = new SurfaceTextureCache();
+    }
+    return sInstance;
+  }
+
+  // Least recently retained first
+  private final List<ToroVideoView> views = new ArrayList<>();
+  private final List<SurfaceTexture> textures = new ArrayList<>();
+  private int maxSize = DEFAULT_MAX_SIZE;
+  private boolean callbacksRegistered;
+
+  private SurfaceTextureCache() {
+  }
+
+  /**
+   * @return true if the texture is retained, false if retention is disabled
+   */
+  boolean put(@NonNull ToroVideoView view, @NonNull SurfaceTexture texture) {
+    if (maxSize == 0) {
+      return false;
+    }
+
+    int index = views.indexOf(view);
+    if (index >= 0) {
+      views.remove(index);
+      textures.remove(index);
+    }
+    registerCallbacks(view.getContext());
+    evictFinished();
+    views.add(view);
+    textures.add(texture);
+    trimTo(maxSize);
+    return true;
+  }
+
+  /**
+   * Remove the View's entry, to re-bind its texture.
+   *
+   * @return the View's retained texture, or null if there is none
+   */
+  @Nullable SurfaceTexture take(@NonNull ToroVideoView view) {
+    int index = views.indexOf(view);
+    if (index < 0) {
+      return null;
+    }
+
+    views.remove(index);
+    return textures.remove(index);
+  }
+
+  /**
+   * Evict the View's entry: the View releases its player and the texture.
+   *
+   * @return true if the View had an entry
+   */
+  boolean evict(@NonNull ToroVideoView view) {
+    SurfaceTexture texture = take(view);
+    if (texture == null) {
+      return false;
+    }
+
+    view.onSurfaceTextureEvicted(texture);
+    return true;
+  }
+
+  int getMaxSize() {
+    return maxSize;
+  }
+
+  void setMaxSize(int maxSize) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("Max size must not be negative.");
+    }
+
+    this.maxSize = maxSize;
+    trimTo(maxSize);
+  }
+
+  int size() {
+    return views.size();
+  }
+
+  void clear() {
+    trimTo(0);
+  }
+
+  @Override public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+  }
+
+  @Override public void onActivityStarted(Activity activity) {
+  }
+
+  @Override public void onActivityResumed(Activity activity) {
+  }
+
+  @Override public void onActivityPaused(Activity activity) {
+  }
+
+  @Override public void onActivityStopped(Activity activity) {
+  }
+
+  @Override public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+  }
+
+  @Override public void onActivityDestroyed(Activity activity) {
+    for (int i = views.size() - 1; i >= 0; i--) {
+      if (activityOf(views.get(i)) == activity) {
+        ToroVideoView view = views.remove(i);
+        view.onSurfaceTextureEvicted(textures.remove(i));
+      }
+    }
+  }
+
+  private void registerCallbacks(@NonNull Context context) {
+    if (callbacksRegistered) {
+      return;
+    }
+
+    Context appContext = context.getApplicationContext();
+    if (appContext instanceof Application) {
+      // Registered for the process lifetime, as this cache
+      ((Application) appContext).registerActivityLifecycleCallbacks(this);
+      callbacksRegistered = true;
+    }
+  }
+
+  private void evictFinished() {
+    for (int i = views.size() - 1; i >= 0; i--) {
+      Activity activity = activityOf(views.get(i));
+      if (activity != null && activity.isFinishing()) {
+        ToroVideoView view = views.remove(i);
+        view.onSurfaceTextureEvicted(textures.remove(i));
+      }
+    }
+  }
+
+  @Nullable private static Activity activityOf(@NonNull View view) {
+    Context context = view.getContext();
+    while (context instanceof ContextWrapper) {
+      if (context instanceof Activity) {
+        return (Activity) context;
+      }
+      context = ((ContextWrapper) context).getBaseContext();
+    }
+    return null;
+  }
+
+  private void trimTo(int size) {
+    while (views.size() > size) {
+      ToroVideoView view = views.remove(0);
+      view.onSurfaceTextureEvicted(textures.remove(0));
+    }
+  }
+}
@@ -25,6 +25,7 @@ import android.net.Uri;
 import android.os.Build;
 import android.support.annotation.FloatRange;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.v4.app.ActivityCompat;
 import android.util.AttributeSet;
 import android.view.Surface;
@@ -38,6 +39,7 @@ import im.ene.lab.toro.media.Cineer;
 import im.ene.lab.toro.media.LastMomentCallback;
 import im.ene.lab.toro.media.Media;
 import im.ene.lab.toro.media.OnInfoListener;
+import im.ene.lab.toro.media.OnPlaybackTimingListener;
 import im.ene.lab.toro.media.OnPlayerStateChangeListener;
 import im.ene.lab.toro.media.OnVideoSizeChangedListener;
 import im.ene.lab.toro.media.PlaybackException;
@@ -45,6 +47,9 @@ import im.ene.lab.toro.media.PlaybackInfo;
 import im.ene.lab.toro.media.State;
 import im.ene.lab.toro.player.BuildConfig;
 import im.ene.lab.toro.player.internal.ExoMediaPlayer;
+import im.ene.lab.toro.player.internal.ExoMediaPlayerPool;
+import im.ene.lab.toro.player.internal.ExoMediaPlayerReleaser;
+import im.ene.lab.toro.player.internal.MediaCache;
 import im.ene.lab.toro.player.internal.RendererBuilderFactory;
 import java.util.List;
 
@@ -67,9 +72,13 @@ public class ToroVideoView extends ResizingTextureView implements Cineer.VideoPl
       if (mMediaPlayer != null) {
         mMediaPlayer.setSurface(ToroVideoView.this.mSurface);
         if (!mPlayerNeedsPrepare) {
-          mMediaPlayer.seekTo(mPlayerPosition);
+          // A handed over player plays on, its buffers must not be flushed
+          if (!mHandedOver) {
+            mMediaPlayer.seekTo(mPlayerPosition);
+          }
           mMediaPlayer.setPlayWhenReady(mPlayRequested);
         }
+        mHandedOver = false;
       } else {
         preparePlayer(mPlayRequested);
       }
@@ -81,20 +90,45 @@ public class ToroVideoView extends ResizingTextureView implements Cineer.VideoPl
     }
 
     @Override public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
+      // Keep the texture and the player rendering into it, re-bound on re-attach. The detached
+      // View is out of sight: pause until then.
+      if (mMediaPlayer != null && !mBackgroundAudioEnabled
+          && SurfaceTextureCache.getInstance().put(ToroVideoView.this, surface)) {
+        mSurfaceRetained = true;
+        mMediaPlayer.setPlayWhenReady(false);
+        return false;
+      }
+
+      // Stop rendering now, without waiting for the playback thread: this happens on detach,
+      // usually while the parent is scrolling.
+      final ExoMediaPlayer player = mMediaPlayer;
       if (!mBackgroundAudioEnabled) {
         releasePlayer();
-      } else {
-        if (mMediaPlayer != null) {
-          mMediaPlayer.setBackgrounded(true);
+        if (mDetached) {
+          mPlayerPosition = 0;
         }
+      } else if (player != null) {
+        player.setBackgrounded(true, false);
       }
 
-      if (mMediaPlayer != null) {
-        mMediaPlayer.blockingClearSurface();
+      // A player handed off by this View may still render here. Its Surface is cleared without
+      // waiting: releaseSurface() below waits for its playback thread, in background.
+      ExoMediaPlayer renderer = player;
+      if (renderer == null && mHandedOffPlayer != null) {
+        if (mHandedOffPlayer.getSurface() == mSurface) {
+          mHandedOffPlayer.setSurface(null);
+        }
+        renderer = mHandedOffPlayer;
       }
+      mHandedOffPlayer = null;
+
       mPlayerNeedsPrepare = true;
+      final Surface playerSurface = ToroVideoView.this.mSurface;
       ToroVideoView.this.mSurface = null;
-      return true;
+      // The playback thread may still render to the texture: release it once that thread is done
+      // with it, in background. Released players are handed over first, so are done by then.
+      ExoMediaPlayerReleaser.getInstance().releaseSurface(renderer, playerSurface, surface);
+      return false;
     }
 
     @Override public void onSurfaceTextureUpdated(SurfaceTexture surface) {
@@ -159,6 +193,16 @@ public class ToroVideoView extends ResizingTextureView implements Cineer.VideoPl
   private AudioCapabilities mAudioCapabilities;
   private ExoMediaPlayer mMediaPlayer;
   private Surface mSurface;
+  // True while detached, with mSurface's texture in SurfaceTextureCache
+  private boolean mSurfaceRetained = false;
+  // True from onDetachedFromWindow() to onAttachedToWindow()
+  private boolean mDetached = false;
+  // True if mMediaPlayer was handed over by another View, until this View's Surface is available
+  private boolean mHandedOver = false;
+  // Last player handed off by this View, it renders to mSurface until its new View has a Surface
+  private ExoMediaPlayer mHandedOffPlayer;
+  // Media pinned in MediaCache while mMediaPlayer plays it
+  private Uri mPinnedUri;
 
   private long mPlayerPosition;
 
@@ -174,6 +218,7 @@ public class ToroVideoView extends ResizingTextureView implements Cineer.VideoPl
   private OnVideoSizeChangedListener onVideoSizeChangedListener;
   private OnInfoListener mOnInfoListener;
   private LastMomentCallback lastMomentCallback;
+  private OnPlaybackTimingListener mPlaybackTimingListener;
 
   // DEBUG
   private EventLogger mEventLogger;
@@ -215,6 +260,17 @@ public class ToroVideoView extends ResizingTextureView implements Cineer.VideoPl
     this.lastMomentCallback = lastMomentCallback;
   }
 
+  /**
+   * Listen to timing milestones of playbacks of this View: prepare, renderers built, first frame
+   * and rebuffering.
+   */
+  public void setPlaybackTimingListener(OnPlaybackTimingListener listener) {
+    this.mPlaybackTimingListener = listener;
+    if (mMediaPlayer != null) {
+      mMediaPlayer.setPlaybackTimingListener(listener);
+    }
+  }
+
   private OnInfoListener onInfoListenerDelegate = new OnInfoListener() {
     @Override public boolean onInfo(Cineer mp, PlaybackInfo info) {
       return mOnInfoListener != null && mOnInfoListener.onInfo(mp, info);
@@ -252,6 +308,11 @@ public class ToroVideoView extends ResizingTextureView implements Cineer.VideoPl
   }
 
   @Override public void releasePlayer() {
+    // Detached with a retained texture: it goes with the player
+    if (mSurfaceRetained && SurfaceTextureCache.getInstance().evict(this)) {
+      return;
+    }
+
     if (mMediaPlayer != null) {
       if (lastMomentCallback != null) {
         lastMomentCallback.onLastMoment(mMediaPlayer);
@@ -260,8 +321,10 @@ public class ToroVideoView extends ResizingTextureView implements Cineer.VideoPl
       mPlayerPosition = mMediaPlayer.getCurrentPosition();
       mMediaPlayer.removeListener(mEventLogger);
       mMediaPlayer.removeListener(playerListener);
-      mMediaPlayer.release();
+      // Give it back, so next preparePlayer() here or in other View doesn't start a new thread.
+      ExoMediaPlayerPool.getInstance().release(mMediaPlayer);
       mMediaPlayer = null;
+      unpinMedia();
       mEventLogger.endSession();
       mEventLogger = null;
       mExoMediaPlayerHelper = null;
@@ -274,25 +337,10 @@ public class ToroVideoView extends ResizingTextureView implements Cineer.VideoPl
     }
 
     if (mMediaPlayer == null) {
-      mMediaPlayer =
-          new ExoMediaPlayer(RendererBuilderFactory.createRendererBuilder(getContext(), mMedia));
-      mMediaPlayer.addListener(playerListener);
-
-      mMediaPlayer.setPlayerStateChangeListener(stateChangeListenerDelegate);
-      mMediaPlayer.setOnInfoListener(onInfoListenerDelegate);
-
-      mMediaPlayer.setCaptionListener(mExoMediaPlayerHelper);
-      mMediaPlayer.setMetadataListener(mExoMediaPlayerHelper);
-      /* mMediaPlayer.setScreenOnWhilePlaying(true); */ // this is handle by this View
+      attachPlayer(ExoMediaPlayerPool.getInstance()
+          .acquire(RendererBuilderFactory.createRendererBuilder(getContext(), mMedia)));
       mMediaPlayer.seekTo(mPlayerPosition);
       mPlayerNeedsPrepare = true;
-      mEventLogger = new EventLogger();
-      mEventLogger.startSession();
-      if (BuildConfig.DEBUG) {
-        mMediaPlayer.addListener(mEventLogger);
-        mMediaPlayer.setInfoListener(mEventLogger);
-        mMediaPlayer.setInternalErrorListener(mEventLogger);
-      }
     }
 
     if (mPlayerNeedsPrepare) {
@@ -300,12 +348,201 @@ public class ToroVideoView extends ResizingTextureView implements Cineer.VideoPl
       mPlayerNeedsPrepare = false;
     }
 
-    mMediaPlayer.setSurface(mSurface);
+    setPlayerSurface();
     mMediaPlayer.setPlayWhenReady(playWhenReady);
   }
 
+  /**
+   * Render current player to mSurface. Two players can't render to one Surface: if a player handed
+   * off by this View still does, its Surface is cleared first in background, and set to current
+   * player once done. Until then current player prepares without a Surface.
+   */
+  private void setPlayerSurface() {
+    final ExoMediaPlayer handedOff = mHandedOffPlayer;
+    if (handedOff == null || handedOff.getSurface() != mSurface) {
+      mMediaPlayer.setSurface(mSurface);
+      return;
+    }
+
+    final ExoMediaPlayer player = mMediaPlayer;
+    final Surface surface = mSurface;
+    ExoMediaPlayerReleaser.getInstance().clearSurface(handedOff, new Runnable() {
+      @Override public void run() {
+        if (mHandedOffPlayer == handedOff) {
+          mHandedOffPlayer = null;
+        }
+        // Unless this View moved on meanwhile
+        if (mMediaPlayer == player && mSurface == surface) {
+          player.setSurface(surface);
+        }
+      }
+    });
+  }
+
+  private void attachPlayer(@NonNull ExoMediaPlayer player) {
+    mMediaPlayer = player;
+    mMediaPlayer.addListener(playerListener);
+
+    mMediaPlayer.setPlayerStateChangeListener(stateChangeListenerDelegate);
+    mMediaPlayer.setOnInfoListener(onInfoListenerDelegate);
+
+    mMediaPlayer.setCaptionListener(mExoMediaPlayerHelper);
+    mMediaPlayer.setMetadataListener(mExoMediaPlayerHelper);
+    mMediaPlayer.setPlaybackTimingListener(mPlaybackTimingListener);
+    /* mMediaPlayer.setScreenOnWhilePlaying(true); */ // this is handle by this View
+    mEventLogger = new EventLogger();
+    mEventLogger.startSession();
+    if (BuildConfig.DEBUG) {
+      mMediaPlayer.addListener(mEventLogger);
+      mMediaPlayer.setInfoListener(mEventLogger);
+      mMediaPlayer.setInternalErrorListener(mEventLogger);
+    }
+    pinMedia();
+  }
+
+  private void pinMedia() {
+    if (mPinnedUri == null && mMedia != null && MediaCache.isEnabled()) {
+      mPinnedUri = mMedia.getMediaUri();
+      MediaCache.getInstance(getContext()).pin(mPinnedUri);
+    }
+  }
+
+  private void unpinMedia() {
+    if (mPinnedUri != null) {
+      MediaCache.getInstance(getContext()).unpin(mPinnedUri);
+      mPinnedUri = null;
+    }
+  }
+
+  /**
+   * Move the prepared player of this View, with its buffers and decoders, to another View, eg. a
+   * fullscreen one. Playback goes on without prepare nor seek: the player keeps rendering to this
+   * View's Surface until the target View's one is available. Call it on the target View to hand
+   * the player back.
+   *
+   * This View keeps its Media, and prepares a new player if it is asked to play again.
+   *
+   * @param target View to play the Media from now on. Its own player, if any, is released.
+   * @return true if the player is handed over, false if this View has no prepared player
+   */
+  public boolean handOffTo(@NonNull ToroVideoView target) {
+    if (target == this || mMediaPlayer == null || mPlayerNeedsPrepare) {
+      return false;
+    }
+
+    final ExoMediaPlayer player = mMediaPlayer;
+    player.removeListener(mEventLogger);
+    player.removeListener(playerListener);
+    mEventLogger.endSession();
+    mEventLogger = null;
+    mPlayerPosition = player.getCurrentPosition();
+    mMediaPlayer = null;
+    mPlayerNeedsPrepare = true;
+    mHandedOffPlayer = player;
+    // The target pins the Media once it holds the player
+    unpinMedia();
+    setKeepScreenOn(false);
+
+    target.adoptPlayer(player, mMedia, mPlayRequested, videoWidth, videoHeight);
+    return true;
+  }
+
+  private void adoptPlayer(@NonNull ExoMediaPlayer player, @NonNull Media media,
+      boolean playRequested, int width, int height) {
+    releasePlayer();
+    if (mHandedOffPlayer == player) {
+      mHandedOffPlayer = null;
+    }
+
+    mMedia = media;
+    mPlayRequested = playRequested;
+    mPlayerPosition = player.getCurrentPosition();
+    attachPlayer(player);
+    mPlayerNeedsPrepare = false;
+    mPlaybackState = player.getPlaybackState();
+    setKeepScreenOn(isInPlayableState());
+
+    videoWidth = width;
+    videoHeight = height;
+    if (updateVideoSize(width, height)) {
+      requestLayout();
+    }
+
+    if (mSurface != null) {
+      setPlayerSurface();
+      mHandedOver = false;
+    } else {
+      // Set once available. Until then the player renders to the previous View's Surface.
+      mHandedOver = true;
+    }
+  }
+
+  /**
+   * @return current player of this View, or null if it has none
+   */
+  @Nullable public Cineer getMediaPlayer() {
+    return mMediaPlayer;
+  }
+
+  /**
+   * @return true if this View holds a prepared, or preparing, player. It may be detached, keeping
+   * its player with its retained SurfaceTexture.
+   */
+  public boolean hasPreparedPlayer() {
+    return mMediaPlayer != null && !mPlayerNeedsPrepare;
+  }
+
+  /**
+   * Limit the number of detached ToroVideoViews which keep their SurfaceTexture and player, so
+   * re-attaching them resumes without a new Surface, prepare nor seek. Least recently detached ones
+   * are released first. Default value is 2.
+   *
+   * @param maxSize max number of retained SurfaceTextures. 0 disables retention.
+   */
+  public static void setSurfaceTextureRetention(int maxSize) {
+    SurfaceTextureCache.getInstance().setMaxSize(maxSize);
+  }
+
+  public static int getSurfaceTextureRetention() {
+    return SurfaceTextureCache.getInstance().getMaxSize();
+  }
+
+  /**
+   * Release every retained SurfaceTexture and its player, eg. when trimming memory.
+   */
+  public static void clearRetainedSurfaceTextures() {
+    SurfaceTextureCache.getInstance().clear();
+  }
+
+  /**
+   * Called by {@link SurfaceTextureCache} when this View's retained texture is evicted. The View is
+   * detached: release its player, then the texture once the player doesn't render to it anymore.
+   */
+  void onSurfaceTextureEvicted(@NonNull SurfaceTexture texture) {
+    final ExoMediaPlayer player = mMediaPlayer;
+    mSurfaceRetained = false;
+    mPlayerPosition = 0;
+    releasePlayer();
+    mPlayerNeedsPrepare = true;
+    final Surface playerSurface = mSurface;
+    mSurface = null;
+    ExoMediaPlayerReleaser.getInstance().releaseSurface(player, playerSurface, texture);
+  }
+
   @Override protected void onAttachedToWindow() {
     super.onAttachedToWindow();
+    mDetached = false;
+    SurfaceTexture retained = SurfaceTextureCache.getInstance().take(this);
+    if (retained != null) {
+      // Player kept rendering into it: no onSurfaceTextureAvailable(), mSurface is still valid
+      mSurfaceRetained = false;
+      if (getSurfaceTexture() != retained) {
+        setSurfaceTexture(retained);
+      }
+      if (mMediaPlayer != null && !mPlayerNeedsPrepare) {
+        mMediaPlayer.setPlayWhenReady(mPlayRequested);
+      }
+    }
     mAudioCapabilitiesReceiver =
         new AudioCapabilitiesReceiver(getContext(), audioCapabilitiesListener);
     mAudioCapabilitiesReceiver.register();
@@ -313,6 +550,7 @@ public class ToroVideoView extends ResizingTextureView implements Cineer.VideoPl
 
   @Override protected void onDetachedFromWindow() {
     super.onDetachedFromWindow();
+    mDetached = true;
     try {
       mAudioCapabilitiesReceiver.unregister();
       mAudioCapabilitiesReceiver = null;
@@ -320,9 +558,14 @@ public class ToroVideoView extends ResizingTextureView implements Cineer.VideoPl
       // Have no idea, it crash by this Exception sometime.
       er.printStackTrace();
     }
-    mPlayerPosition = 0;
     mAudioCapabilities = null;
-    releasePlayer();
+    // Before API 21, the texture is destroyed by super.onDetachedFromWindow(), so it is retained or
+    // released by now. Since API 21 it is destroyed after this method: onSurfaceTextureDestroyed()
+    // decides then. Release here only if there is no texture to decide on.
+    if (!mSurfaceRetained && mSurface == null) {
+      mPlayerPosition = 0;
+      releasePlayer();
+    }
   }
 
   private void maybeNotifyAudioCapabilitiesChanged(AudioCapabilities audioCapabilities) {
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro.player.internal;
+
+import android.net.Uri;
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.DefaultHttpDataSource;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link MediaCacheDataSource} over a {@link DefaultHttpDataSource}, against a local HTTP server.
+ */
+@RunWith(RobolectricTestRunner.class) @Config(manifest = Config.NONE, sdk = 23)
+public class MediaCacheDataSourceTest {
+
+  private static final int MEDIA_LENGTH = 300 * 1024;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final byte[] media = new byte[MEDIA_LENGTH];
+  private final AtomicInteger requestCount = new AtomicInteger();
+  // False to answer without Content-Length nor Content-Range, as a live or chunked stream
+  private volatile boolean sendsLength = true;
+
+  private HttpServer server;
+  private MediaCache cache;
+  private Uri uri;
+
+  @Before public void setUp() throws IOException {
+    new Random(42).nextBytes(media);
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/media", new HttpHandler() {
+      @Override public void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        serve(exchange);
+      }
+    });
+    server.start();
+    uri = Uri.parse("http://127.0.0.1:" + server.getAddress().getPort() + "/media");
+    cache = new MediaCache(folder.newFolder("cache"), MEDIA_LENGTH * 4);
+  }
+
+  @After public void tearDown() {
+    server.stop(0);
+  }
+
+  @Test public void readsAreWrittenToCacheAndServedFromIt() throws IOException {
+    byte[] first = readAll(new DataSpec(uri, 0, C.LENGTH_UNBOUNDED, null));
+    assertArrayEquals(media, first);
+    assertEquals(1, requestCount.get());
+    assertEquals(MEDIA_LENGTH, cache.getBytesFromNetwork());
+
+    byte[] second = readAll(new DataSpec(uri, 0, C.LENGTH_UNBOUNDED, null));
+    assertArrayEquals(media, second);
+    assertEquals(1, requestCount.get());
+    assertEquals(MEDIA_LENGTH, cache.getBytesFromCache());
+    assertEquals(MEDIA_LENGTH, cache.getCacheSpace());
+  }
+
+  @Test public void partialCacheIsCompletedFromUpstream() throws IOException {
+    readAll(new DataSpec(uri, 0, 1000, null));
+    assertEquals(1, requestCount.get());
+
+    byte[] all = readAll(new DataSpec(uri, 0, C.LENGTH_UNBOUNDED, null));
+    assertArrayEquals(media, all);
+    // Rest of the media only
+    assertEquals(2, requestCount.get());
+    assertEquals(1000, cache.getBytesFromCache());
+    assertEquals(MEDIA_LENGTH, cache.getCacheSpace());
+  }
+
+  @Test public void lengthOfUnboundedRequestIsLearnt() throws IOException {
+    String key = uri.toString();
+    assertEquals(C.LENGTH_UNBOUNDED, cache.getContentLength(key));
+    readAll(new DataSpec(uri, 0, C.LENGTH_UNBOUNDED, null));
+    assertEquals(MEDIA_LENGTH, cache.getContentLength(key));
+
+    // Next unbounded request is resolved without upstream
+    DataSource source = cache.createDataSource(new DefaultHttpDataSource("test", null), uri);
+    try {
+      long length = source.open(new DataSpec(uri, 100, C.LENGTH_UNBOUNDED, null));
+      assertEquals(MEDIA_LENGTH - 100, length);
+    } finally {
+      source.close();
+    }
+    assertEquals(1, requestCount.get());
+  }
+
+  @Test public void rangeNotSatisfiableAfterCachedDataIsEndOfInput() throws IOException {
+    sendsLength = false;
+    readAll(new DataSpec(uri, 0, MEDIA_LENGTH, null));
+    assertEquals(1, requestCount.get());
+
+    // Cached data is read, then upstream answers 416 for the position after it
+    byte[] all = readAll(new DataSpec(uri, 0, C.LENGTH_UNBOUNDED, null));
+    assertArrayEquals(media, all);
+    assertEquals(2, requestCount.get());
+    assertEquals(MEDIA_LENGTH, cache.getContentLength(uri.toString()));
+
+    // Length is known now: no request at all
+    readAll(new DataSpec(uri, 0, C.LENGTH_UNBOUNDED, null));
+    assertEquals(2, requestCount.get());
+  }
+
+  private byte[] readAll(DataSpec dataSpec) throws IOException {
+    DataSource source = cache.createDataSource(new DefaultHttpDataSource("test", null), uri);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8 * 1024];
+    try {
+      source.open(dataSpec);
+      int read;
+      while ((read = source.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+        output.write(buffer, 0, read);
+      }
+    } finally {
+      source.close();
+    }
+    return output.toByteArray();
+  }
+
+  // Serves the media, honoring "bytes=start-" and "bytes=start-end" ranges
+  private void serve(HttpExchange exchange) throws IOException {
+    String range = exchange.getRequestHeaders().getFirst("Range");
+    int start = 0;
+    int end = MEDIA_LENGTH - 1;
+    if (range != null) {
+      String[] bounds = range.substring("bytes=".length()).split("-", -1);
+      start = Integer.parseInt(bounds[0]);
+      if (!bounds[1].isEmpty()) {
+        end = Math.min(end, Integer.parseInt(bounds[1]));
+      }
+    }
+
+    if (start >= MEDIA_LENGTH) {
+      exchange.sendResponseHeaders(416, -1);
+      exchange.close();
+      return;
+    }
+
+    int length = end - start + 1;
+    if (sendsLength && range != null) {
+      exchange.getResponseHeaders()
+          .set("Content-Range", "bytes " + start + "-" + end + "/" + MEDIA_LENGTH);
+    }
+    // A length of 0 makes the response chunked, without Content-Length
+    exchange.sendResponseHeaders(range != null ? 206 : 200, sendsLength ? length : 0);
+    OutputStream body = exchange.getResponseBody();
+    try {
+      body.write(media, start, length);
+    } finally {
+      exchange.close();
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro.player.widget;
+
+import android.app.Activity;
+import android.graphics.SurfaceTexture;
+import android.net.Uri;
+import android.view.Surface;
+import android.widget.FrameLayout;
+import im.ene.lab.toro.player.internal.ExoMediaPlayer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Retention of a {@link ToroVideoView}'s SurfaceTexture and player across detach. There is no
+ * hardware layer here, so TextureView's own texture callbacks are driven by the test.
+ */
+@RunWith(RobolectricTestRunner.class) @Config(manifest = Config.NONE, sdk = 23)
+public class ToroVideoViewTest {
+
+  private FrameLayout parent;
+  private ToroVideoView view;
+  private SurfaceTexture texture;
+
+  @Before public void setUp() {
+    Activity activity = Robolectric.setupActivity(Activity.class);
+    parent = new FrameLayout(activity);
+    activity.setContentView(parent);
+    view = new ToroVideoView(activity);
+    parent.addView(view);
+
+    texture = new SurfaceTexture(0);
+    view.setMedia(Uri.parse("http://127.0.0.1/video.mp4"));
+    view.getSurfaceTextureListener().onSurfaceTextureAvailable(texture, 640, 360);
+    view.start();
+  }
+
+  @After public void tearDown() {
+    ToroVideoView.clearRetainedSurfaceTextures();
+    ToroVideoView.setSurfaceTextureRetention(SurfaceTextureCache.DEFAULT_MAX_SIZE);
+  }
+
+  @Test public void retainedPlayerAndSurfaceComeBackOnReattach() {
+    ExoMediaPlayer player = (ExoMediaPlayer) view.getMediaPlayer();
+    assertNotNull(player);
+    Surface surface = player.getSurface();
+    assertNotNull(surface);
+
+    // Scrolled off: paused by its ViewHolder, not released, then detached
+    view.pause();
+    parent.removeView(view);
+    assertFalse(view.getSurfaceTextureListener().onSurfaceTextureDestroyed(texture));
+    assertSame(player, view.getMediaPlayer());
+    assertEquals(1, SurfaceTextureCache.getInstance().size());
+
+    parent.addView(view);
+    assertEquals(0, SurfaceTextureCache.getInstance().size());
+    assertSame(texture, view.getSurfaceTexture());
+    assertSame(player, view.getMediaPlayer());
+    assertSame(surface, player.getSurface());
+    // Until elected again
+    assertFalse(player.getPlayWhenReady());
+  }
+
+  @Test public void evictedTextureReleasesPlayer() {
+    view.pause();
+    parent.removeView(view);
+    assertFalse(view.getSurfaceTextureListener().onSurfaceTextureDestroyed(texture));
+
+    ToroVideoView.clearRetainedSurfaceTextures();
+    assertNull(view.getMediaPlayer());
+    assertEquals(0, SurfaceTextureCache.getInstance().size());
+  }
+
+  @Test public void releasingRetainedPlayerEvictsTexture() {
+    view.pause();
+    parent.removeView(view);
+    assertFalse(view.getSurfaceTextureListener().onSurfaceTextureDestroyed(texture));
+    assertTrue(view.hasPreparedPlayer());
+
+    // As the Toro-wide scheduler does when it is short of budget
+    view.releasePlayer();
+    assertFalse(view.hasPreparedPlayer());
+    assertEquals(0, SurfaceTextureCache.getInstance().size());
+  }
+
+  @Test public void textureIsNotRetainedIfRetentionIsDisabled() {
+    ToroVideoView.setSurfaceTextureRetention(0);
+    view.pause();
+    parent.removeView(view);
+    assertFalse(view.getSurfaceTextureListener().onSurfaceTextureDestroyed(texture));
+    assertNull(view.getMediaPlayer());
+  }
+}
@@ -16,13 +16,17 @@
 
 package im.ene.lab.toro.sample.presentation.advance1;
 
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
 import com.azoft.carousellayoutmanager.CarouselLayoutManager;
 import im.ene.lab.toro.ToroLayoutManager;
 
 /**
  * Created by eneim on 6/30/16.
  */
-public class Advance1LayoutManager extends CarouselLayoutManager implements ToroLayoutManager {
+public class Advance1LayoutManager extends CarouselLayoutManager
+    implements ToroLayoutManager, ToroLayoutManager.VisibleChildren {
 
   public Advance1LayoutManager(int orientation) {
     super(orientation);
@@ -39,4 +43,19 @@ public class Advance1LayoutManager extends CarouselLayoutManager implements Toro
   @Override public int getLastVisibleItemPosition() {
     return getCenterItemPosition();
   }
+
+  // Only the center item is a candidate, side items are scaled down and overlapped.
+  @Override public int findVisibleChildren(@NonNull RecyclerView parent, @NonNull int[] indices) {
+    int centerPosition = getCenterItemPosition();
+    for (int i = 0, count = getChildCount(); i < count; i++) {
+      View child = getChildAt(i);
+      if (child != null && getPosition(child) == centerPosition) {
+        if (indices.length > 0) {
+          indices[0] = i;
+        }
+        return 1;
+      }
+    }
+    return 0;
+  }
 }
@@ -34,6 +34,7 @@ import im.ene.lab.toro.Toro;
 import im.ene.lab.toro.ToroPlayer;
 import im.ene.lab.toro.ToroStrategy;
 import im.ene.lab.toro.VideoPlayerManager;
+import im.ene.lab.toro.ext.ToroVideoViewHolder;
 import im.ene.lab.toro.sample.R;
 import im.ene.lab.toro.sample.data.SimpleVideoObject;
 import im.ene.lab.toro.sample.widget.DividerItemDecoration;
@@ -169,6 +170,40 @@ public class FbFeedFragment extends Fragment {
     }
   };
 
+  // Player whose playback is handed off to the dialog
+  private ToroVideoViewHolder handOffSource;
+
+  /**
+   * Move the playing Video to a player of the dialog, without re-buffering it.
+   *
+   * @return true if the playback is handed off
+   */
+  boolean handOffTo(@NonNull final ToroVideoViewHolder target) {
+    return Toro.handOff(mRecyclerView, new Toro.HandOff() {
+      @Override public boolean handOff(@NonNull ToroPlayer player) {
+        if (player instanceof ToroVideoViewHolder && ((ToroVideoViewHolder) player).handOffTo(
+            target)) {
+          handOffSource = (ToroVideoViewHolder) player;
+          return true;
+        }
+        return false;
+      }
+    });
+  }
+
+  /**
+   * Move the playback handed off by {@link #handOffTo(ToroVideoViewHolder)} back to the feed.
+   */
+  void takeBack(@NonNull ToroVideoViewHolder from) {
+    if (handOffSource == null) {
+      return;
+    }
+
+    from.handOffTo(handOffSource);
+    Toro.takeBack(mRecyclerView, handOffSource);
+    handOffSource = null;
+  }
+
   @Override public void onActivityResult(int requestCode, int resultCode, Intent data) {
     super.onActivityResult(requestCode, resultCode, data);
     if (requestCode == RESUME_REQUEST_CODE) {
@@ -38,6 +38,7 @@ import im.ene.lab.toro.ToroStrategy;
 import im.ene.lab.toro.VideoPlayerManager;
 import im.ene.lab.toro.VideoPlayerManagerImpl;
 import im.ene.lab.toro.ext.ToroAdapter;
+import im.ene.lab.toro.ext.ToroVideoViewHolder;
 import im.ene.lab.toro.sample.BuildConfig;
 import im.ene.lab.toro.sample.R;
 import im.ene.lab.toro.sample.data.SimpleVideoObject;
@@ -149,6 +150,9 @@ public class FbPLayerDialogFragment extends LargeDialogFragment {
         ((LinearLayoutManager) layoutManager).getOrientation()));
 
     adapter = new Adapter(initItem);
+    if (getTargetFragment() instanceof FbFeedFragment) {
+      adapter.handOffSource = (FbFeedFragment) getTargetFragment();
+    }
     recyclerView.setHasFixedSize(false);
     recyclerView.setAdapter(adapter);
     recyclerView.smoothScrollToPosition(0);
@@ -165,6 +169,16 @@ public class FbPLayerDialogFragment extends LargeDialogFragment {
   }
 
   @Override public void onDismiss(DialogInterface dialog) {
+    if (adapter.handedOver != null) {
+      // Playback goes back to the feed as is, no need to send its position
+      ((FbFeedFragment) getTargetFragment()).takeBack(adapter.handedOver);
+      adapter.handedOver = null;
+      adapter.setPlayer(null);
+      Toro.unregister(recyclerView);
+      super.onDismiss(dialog);
+      return;
+    }
+
     Toro.unregister(recyclerView);
     Long latestPosition = adapter.getSavedPosition(initItem.toString() + "@0"); // first item
     if (getTargetFragment() != null && latestPosition != null) {
@@ -193,6 +207,10 @@ public class FbPLayerDialogFragment extends LargeDialogFragment {
 
     private final SimpleVideoObject initItem;
     private final VideoPlayerManager delegate;
+    // Feed to take the playing Video over from, once the first player is attached
+    FbFeedFragment handOffSource;
+    // First player, if it took the playback over
+    ToroVideoViewHolder handedOver;
 
     public Adapter(SimpleVideoObject initItem) {
       super();
@@ -228,6 +246,19 @@ public class FbPLayerDialogFragment extends LargeDialogFragment {
       return viewHolder;
     }
 
+    @Override public void onViewAttachedToWindow(ViewHolder holder) {
+      // Take the playback over before Toro sees this player, so it is the current playing one
+      if (handOffSource != null && holder.getAdapterPosition() == 0
+          && holder instanceof ToroVideoViewHolder) {
+        if (handOffSource.handOffTo((ToroVideoViewHolder) holder)) {
+          handedOver = (ToroVideoViewHolder) holder;
+          setPlayer(handedOver);
+        }
+        handOffSource = null;
+      }
+      super.onViewAttachedToWindow(holder);
+    }
+
     @Type @Override public int getItemViewType(int position) {
       return VIEW_TYPE_VIDEO;
     }
@@ -250,7 +281,8 @@ public class FbPLayerDialogFragment extends LargeDialogFragment {
     }
 
     @Nullable @Override protected Object getItem(int position) {
-      return mVideos.get(position % mVideos.size());
+      // First item is the one opened from the feed
+      return position == 0 ? initItem : mVideos.get(position % mVideos.size());
     }
 
     @Override public ToroPlayer getPlayer() {
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro;
+
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * Main thread cost of Toro for one registered View. Collected only while
+ * {@link Toro#setMetricsEnabled(boolean)} is on. All durations are in nanoseconds.
+ *
+ * Read from main thread. See {@link Toro#getMetrics(RecyclerView)}.
+ */
+public final class ElectionMetrics {
+
+  private final Histogram passTime = new Histogram();
+  private final Histogram scrollIdleTime = new Histogram();
+  private final Histogram candidates = new Histogram();
+  private final Histogram allowsToPlayTime = new Histogram();
+  private final Histogram visibleAreaOffsetTime = new Histogram();
+  private long playerSwitches = 0;
+
+  ElectionMetrics() {
+  }
+
+  /**
+   * @return wall time of election passes. Its count is the number of passes.
+   */
+  @NonNull public Histogram getPassTime() {
+    return passTime;
+  }
+
+  /**
+   * @return wall time of {@link RecyclerView.OnScrollListener#onScrollStateChanged(RecyclerView,
+   * int)} handling, when the View becomes idle
+   */
+  @NonNull public Histogram getScrollIdleTime() {
+    return scrollIdleTime;
+  }
+
+  /**
+   * @return number of candidates of election passes
+   */
+  @NonNull public Histogram getCandidates() {
+    return candidates;
+  }
+
+  /**
+   * @return wall time of each visibility check ({@link ToroStrategy#allowsToPlay(ToroPlayer,
+   * android.view.ViewParent)} of built-in strategies) during election passes
+   */
+  @NonNull public Histogram getAllowsToPlayTime() {
+    return allowsToPlayTime;
+  }
+
+  /**
+   * @return wall time of each visible area computation ({@link ToroUtil#visibleAreaOffset}) during
+   * election passes
+   */
+  @NonNull public Histogram getVisibleAreaOffsetTime() {
+    return visibleAreaOffsetTime;
+  }
+
+  /**
+   * @return number of election passes which changed the current player
+   */
+  public long getPlayerSwitches() {
+    return playerSwitches;
+  }
+
+  public void reset() {
+    passTime.reset();
+    scrollIdleTime.reset();
+    candidates.reset();
+    allowsToPlayTime.reset();
+    visibleAreaOffsetTime.reset();
+    playerSwitches = 0;
+  }
+
+  void onPlayerSwitched() {
+    playerSwitches++;
+  }
+
+  @Override public String toString() {
+    return "ElectionMetrics{passTime=" + passTime
+        + ", scrollIdleTime=" + scrollIdleTime
+        + ", candidates=" + candidates
+        + ", allowsToPlayTime=" + allowsToPlayTime
+        + ", visibleAreaOffsetTime=" + visibleAreaOffsetTime
+        + ", playerSwitches=" + playerSwitches
+        + '}';
+  }
+}
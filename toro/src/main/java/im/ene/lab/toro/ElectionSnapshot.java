@@ -0,0 +1,189 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro;
+
+import android.graphics.Rect;
+import android.support.annotation.FloatRange;
+import android.support.annotation.NonNull;
+import java.util.Arrays;
+
+/**
+ * Geometry and playback state of every candidate of one election pass, measured exactly once at
+ * the beginning of the pass. Candidates are indexed from 0 to {@link #size()} - 1, in the same
+ * order as the list given to {@link ToroStrategy#findBestPlayer(java.util.List)}: current player
+ * first (if it is still a candidate), then others by their play order.
+ *
+ * A snapshot is read-only for {@link ToroSnapshotStrategy}, and only valid during the call it is
+ * passed to. Toro reuses its buffers for the next pass, so don't keep a reference to it.
+ */
+public final class ElectionSnapshot {
+
+  private static final int INITIAL_CAPACITY = 8;
+
+  private int size = 0;
+  private ToroPlayer[] players = new ToroPlayer[INITIAL_CAPACITY];
+  private float[] visibleOffsets = new float[INITIAL_CAPACITY];
+  private int[] playOrders = new int[INITIAL_CAPACITY];
+  private boolean[] playing = new boolean[INITIAL_CAPACITY];
+  // 4 values per candidate: left, top, right, bottom
+  private int[] rects = new int[INITIAL_CAPACITY * 4];
+  private int currentIndex = -1;
+
+  ElectionSnapshot() {
+  }
+
+  /**
+   * @return number of candidates in this pass
+   */
+  public int size() {
+    return size;
+  }
+
+  @NonNull public ToroPlayer getPlayer(int index) {
+    checkIndex(index);
+    return players[index];
+  }
+
+  /**
+   * @return {@link ToroPlayer#visibleAreaOffset()} of the candidate, measured once for this pass
+   */
+  @FloatRange(from = 0.0, to = 1.0) public float getVisibleAreaOffset(int index) {
+    checkIndex(index);
+    return visibleOffsets[index];
+  }
+
+  /**
+   * @return {@link ToroPlayer#getPlayOrder()} of the candidate
+   */
+  public int getPlayOrder(int index) {
+    checkIndex(index);
+    return playOrders[index];
+  }
+
+  /**
+   * @return {@link ToroPlayer#isPlaying()} of the candidate, at the beginning of this pass
+   */
+  public boolean isPlaying(int index) {
+    checkIndex(index);
+    return playing[index];
+  }
+
+  /**
+   * Fill global visible rect of the candidate's player View into outRect.
+   *
+   * @param index candidate's index
+   * @param outRect the Rect to receive the value
+   */
+  public void getVisibleRect(int index, @NonNull Rect outRect) {
+    checkIndex(index);
+    int offset = index * 4;
+    outRect.set(rects[offset], rects[offset + 1], rects[offset + 2], rects[offset + 3]);
+  }
+
+  /**
+   * @return index of current player of the {@link VideoPlayerManager} in this pass, or -1 if
+   * current player is not a candidate
+   */
+  public int getCurrentIndex() {
+    return currentIndex;
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+    }
+  }
+
+  /* BEGIN: Toro internal, used to fill the snapshot */
+
+  void clear() {
+    Arrays.fill(players, 0, size, null);
+    size = 0;
+    currentIndex = -1;
+  }
+
+  void add(@NonNull ToroPlayer player, boolean isCurrent, @NonNull Rect visibleRect) {
+    add(player, isCurrent, visibleRect, player.visibleAreaOffset());
+  }
+
+  // Used by FlingPredictor, whose geometry is projected rather than measured
+  void add(@NonNull ToroPlayer player, boolean isCurrent, @NonNull Rect visibleRect,
+      float visibleOffset) {
+    ensureCapacity(size + 1);
+    players[size] = player;
+    visibleOffsets[size] = visibleOffset;
+    playOrders[size] = player.getPlayOrder();
+    playing[size] = player.isPlaying();
+    int offset = size * 4;
+    rects[offset] = visibleRect.left;
+    rects[offset + 1] = visibleRect.top;
+    rects[offset + 2] = visibleRect.right;
+    rects[offset + 3] = visibleRect.bottom;
+    if (isCurrent) {
+      currentIndex = size;
+    }
+    size++;
+  }
+
+  // Buffers only grow, so steady state passes don't allocate.
+  private void ensureCapacity(int capacity) {
+    if (capacity <= players.length) {
+      return;
+    }
+
+    int newCapacity = Math.max(capacity, players.length * 2);
+    players = Arrays.copyOf(players, newCapacity);
+    visibleOffsets = Arrays.copyOf(visibleOffsets, newCapacity);
+    playOrders = Arrays.copyOf(playOrders, newCapacity);
+    playing = Arrays.copyOf(playing, newCapacity);
+    rects = Arrays.copyOf(rects, newCapacity * 4);
+  }
+
+  /* END: Toro internal */
+
+  // Shared by the built-in Strategies, see Toro.Strategies
+
+  /**
+   * @return index of the most visible candidate, ties are broken by smaller play order if
+   * byPlayOrder is true, or by snapshot order otherwise. -1 if the snapshot is empty.
+   */
+  int mostVisible(boolean byPlayOrder) {
+    int best = -1;
+    for (int i = 0; i < size; i++) {
+      if (best == -1 || visibleOffsets[i] > visibleOffsets[best]  //
+          || (byPlayOrder && visibleOffsets[i] == visibleOffsets[best]
+          && playOrders[i] < playOrders[best])) {
+        best = i;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * @return index of the candidate with smallest play order, ties are broken by snapshot order.
+   * -1 if the snapshot is empty.
+   */
+  int firstByPlayOrder() {
+    int best = -1;
+    for (int i = 0; i < size; i++) {
+      if (best == -1 || playOrders[i] < playOrders[best]) {
+        best = i;
+      }
+    }
+    return best;
+  }
+}
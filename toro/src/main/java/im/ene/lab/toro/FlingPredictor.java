@@ -0,0 +1,330 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewParent;
+import android.widget.OverScroller;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Predicts the player which will be elected once a fling stops, and asks {@link PlayerScheduler}
+ * to prepare it (paused) while the list is still flinging.
+ *
+ * As soon as a fling starts, its total distance is computed the same way RecyclerView computes it
+ * (an {@link OverScroller} with the same clamped velocity). Attached players are then projected
+ * to their resting position, and the current strategy is asked to elect one of them from a
+ * snapshot of the projected geometry. Players attached during the fling are projected by the
+ * remaining distance. The prediction is cancelled if the user touches the list, or if the list
+ * scrolls against the fling direction.
+ *
+ * {@link ToroPlayer#wantsToPlay()} and allowsToPlay() measure the live layout, not the landing
+ * one, so they don't filter candidates here: any player visible once landed is one. Election
+ * checks them as usual when the fling stops.
+ *
+ * Installed as a {@link RecyclerView.OnItemTouchListener} of a registered View, which never
+ * intercepts: it tracks the velocity of touches the same way RecyclerView does, and a fling is
+ * detected when the list starts settling right after a release. The View's {@link
+ * RecyclerView.OnFlingListener} slot is left to the client. If there is one, eg. a SnapHelper, it
+ * decides where the fling lands, so there is no prediction.
+ *
+ * @hide
+ */
+final class FlingPredictor implements RecyclerView.OnItemTouchListener {
+
+  private static final int INVALID_POINTER = -1;
+
+  private final RecyclerView parent;
+  private final ToroScrollListener listener;
+  private final OverScroller scroller;
+  private final int minFlingVelocity;
+  private final int maxFlingVelocity;
+
+  private final List<ToroPlayer> candidates = new ArrayList<>();
+  private final ElectionSnapshot snapshot = new ElectionSnapshot();
+  private final Rect viewport = new Rect();
+  private final Rect playerRect = new Rect();
+  private final Rect parentRect = new Rect();
+  private final Point parentOffset = new Point();
+
+  // Fling distance left, in pixels. Same sign as the fling.
+  private int remainingX;
+  private int remainingY;
+  private boolean flinging = false;
+  private ToroPlayer predicted;
+
+  // Obtained on first touch, recycled by release()
+  private VelocityTracker velocityTracker;
+  private int scrollPointerId = INVALID_POINTER;
+  // Fling velocity of the last touch release, until the list settles or doesn't
+  private int releaseVelocityX;
+  private int releaseVelocityY;
+  private boolean released = false;
+
+  FlingPredictor(@NonNull RecyclerView parent, @NonNull ToroScrollListener listener) {
+    this.parent = parent;
+    this.listener = listener;
+    this.scroller = new OverScroller(parent.getContext());
+    ViewConfiguration configuration = ViewConfiguration.get(parent.getContext());
+    this.minFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+    this.maxFlingVelocity = configuration.getScaledMaximumFlingVelocity();
+  }
+
+  @Override public boolean onInterceptTouchEvent(RecyclerView view, MotionEvent event) {
+    trackVelocity(event);
+    return false;
+  }
+
+  @Override public void onTouchEvent(RecyclerView view, MotionEvent event) {
+  }
+
+  @Override public void onRequestDisallowInterceptTouchEvent(boolean disallowIntercept) {
+  }
+
+  private void trackVelocity(MotionEvent event) {
+    final int action = event.getActionMasked();
+    if (action == MotionEvent.ACTION_DOWN) {
+      scrollPointerId = event.getPointerId(0);
+      released = false;
+      if (velocityTracker == null) {
+        velocityTracker = VelocityTracker.obtain();
+      } else {
+        velocityTracker.clear();
+      }
+    }
+
+    if (velocityTracker == null) {
+      return;
+    }
+
+    final int index = event.getActionIndex();
+    if (action == MotionEvent.ACTION_POINTER_DOWN) {
+      scrollPointerId = event.getPointerId(index);
+    } else if (action == MotionEvent.ACTION_POINTER_UP
+        && event.getPointerId(index) == scrollPointerId) {
+      // Same as RecyclerView: another pointer goes on scrolling
+      scrollPointerId = event.getPointerId(index == 0 ? 1 : 0);
+    }
+
+    // Screen coordinates, as the list itself may move by nested scrolling. The event is shared
+    // with other listeners: offset it back.
+    final float offsetX = event.getRawX() - event.getX();
+    final float offsetY = event.getRawY() - event.getY();
+    event.offsetLocation(offsetX, offsetY);
+    velocityTracker.addMovement(event);
+    event.offsetLocation(-offsetX, -offsetY);
+
+    if (action == MotionEvent.ACTION_UP) {
+      velocityTracker.computeCurrentVelocity(1000, maxFlingVelocity);
+      // Content moves against the finger, as in RecyclerView
+      releaseVelocityX = (int) -velocityTracker.getXVelocity(scrollPointerId);
+      releaseVelocityY = (int) -velocityTracker.getYVelocity(scrollPointerId);
+      released = true;
+      velocityTracker.clear();
+    } else if (action == MotionEvent.ACTION_CANCEL) {
+      released = false;
+      velocityTracker.clear();
+    }
+  }
+
+  private void startFling(int velocityX, int velocityY) {
+    RecyclerView.LayoutManager layoutManager = parent.getLayoutManager();
+    if (layoutManager == null) {
+      return;
+    }
+
+    // Same threshold and clamping as RecyclerView#fling()
+    if (!layoutManager.canScrollHorizontally() || Math.abs(velocityX) < minFlingVelocity) {
+      velocityX = 0;
+    }
+    if (!layoutManager.canScrollVertically() || Math.abs(velocityY) < minFlingVelocity) {
+      velocityY = 0;
+    }
+    velocityX = Math.max(-maxFlingVelocity, Math.min(velocityX, maxFlingVelocity));
+    velocityY = Math.max(-maxFlingVelocity, Math.min(velocityY, maxFlingVelocity));
+    scroller.fling(0, 0, velocityX, velocityY,  //
+        Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    remainingX = scroller.getFinalX();
+    remainingY = scroller.getFinalY();
+    scroller.forceFinished(true);
+
+    flinging = remainingX != 0 || remainingY != 0;
+    if (flinging) {
+      predict();
+    }
+  }
+
+  void onScrolled(int dx, int dy) {
+    if (!flinging) {
+      return;
+    }
+
+    // User changes direction, the landing position is not the predicted one anymore
+    if ((long) dx * remainingX < 0 || (long) dy * remainingY < 0) {
+      cancel();
+      return;
+    }
+
+    remainingX = consume(remainingX, dx);
+    remainingY = consume(remainingY, dy);
+  }
+
+  void onScrollStateChanged(int newState) {
+    // RecyclerView goes from dragging to settling on release if it flings. A client's fling
+    // listener moves it elsewhere.
+    final boolean flung = released && newState == RecyclerView.SCROLL_STATE_SETTLING;
+    released = false;
+    if (flung && !flinging && parent.getOnFlingListener() == null) {
+      startFling(releaseVelocityX, releaseVelocityY);
+      return;
+    }
+
+    if (flinging && newState != RecyclerView.SCROLL_STATE_SETTLING) {
+      // Dragging again cancels the fling. Idle means it lands, normal election takes over.
+      cancel();
+    }
+  }
+
+  void onPlayerAttached() {
+    if (flinging) {
+      predict();
+    }
+  }
+
+  void cancel() {
+    flinging = false;
+    remainingX = 0;
+    remainingY = 0;
+    if (predicted != null) {
+      predicted = null;
+      Toro.sInstance.mScheduler.setPredicted(null, parent);
+    }
+  }
+
+  /**
+   * Cancel the prediction, and free the velocity tracker. Called when the View is unregistered.
+   */
+  void release() {
+    cancel();
+    released = false;
+    if (velocityTracker != null) {
+      velocityTracker.recycle();
+      velocityTracker = null;
+    }
+  }
+
+  private static int consume(int remaining, int delta) {
+    if (remaining > 0) {
+      return Math.max(0, remaining - delta);
+    } else if (remaining < 0) {
+      return Math.min(0, remaining - delta);
+    }
+    return 0;
+  }
+
+  /**
+   * @return true if the View is under the parent: the item View holding it is a child of the
+   * parent, as in {@link ToroGeometry#VIEWS}
+   */
+  private static boolean isInLayout(@NonNull View view, @NonNull RecyclerView parent) {
+    ViewParent ancestor = view.getParent();
+    while (ancestor instanceof View && ancestor != parent) {
+      ancestor = ancestor.getParent();
+    }
+    return ancestor == parent;
+  }
+
+  private void predict() {
+    // Viewport, in parent's coordinates
+    if (parent.getClipToPadding()) {
+      viewport.set(parent.getPaddingLeft(), parent.getPaddingTop(),
+          parent.getWidth() - parent.getPaddingRight(),
+          parent.getHeight() - parent.getPaddingBottom());
+    } else {
+      viewport.set(0, 0, parent.getWidth(), parent.getHeight());
+    }
+
+    // Snapshot holds global rects, as measured by election
+    if (viewport.isEmpty() || !parent.getGlobalVisibleRect(parentRect, parentOffset)) {
+      return;
+    }
+
+    // Candidates in play order, the same order election uses. Filtered by landing visibility only.
+    final List<ToroPlayer> players = listener.getPlayers();
+    ToroPlayer candidate;
+    for (int i = 0, size = players.size(); i < size; i++) {
+      candidate = players.get(i);
+      if (candidate.getPlayOrder() == RecyclerView.NO_POSITION) {
+        continue;
+      }
+
+      final int order = candidate.getPlayOrder();
+      int index = candidates.size();
+      while (index > 0 && candidates.get(index - 1).getPlayOrder() > order) {
+        index--;
+      }
+      candidates.add(index, candidate);
+    }
+
+    final ToroPlayer best;
+    final ToroPlayer currentPlayer = listener.getManager().getPlayer();
+    try {
+      for (int i = 0, size = candidates.size(); i < size; i++) {
+        candidate = candidates.get(i);
+        View playerView = candidate.getPlayerView();
+        // Item Views in scrap, eg. during layout, can't be offset to the parent
+        if (!isInLayout(playerView, parent)) {
+          continue;
+        }
+
+        playerRect.set(0, 0, playerView.getWidth(), playerView.getHeight());
+        parent.offsetDescendantRectToMyCoords(playerView, playerRect);
+        // Content moves against the scroll direction
+        playerRect.offset(-remainingX, -remainingY);
+        float viewArea = playerRect.width() * playerRect.height();
+        if (!playerRect.intersect(viewport)) {
+          continue;
+        }
+
+        float visibleArea = playerRect.width() * playerRect.height();
+        playerRect.offset(parentOffset.x, parentOffset.y);
+        snapshot.add(candidate, candidate == currentPlayer, playerRect,
+            viewArea <= 0.f ? 1.f : visibleArea / viewArea);
+      }
+      best = Toro.getElectionStrategy().findBestPlayer(snapshot);
+    } finally {
+      snapshot.clear();
+      candidates.clear();
+    }
+
+    if (best == predicted) {
+      return;
+    }
+
+    // Current player doesn't need to be prepared
+    predicted = best == currentPlayer ? null : best;
+    Toro.sInstance.mScheduler.setPredicted(predicted, parent);
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro;
+
+import android.support.annotation.FloatRange;
+import java.util.Arrays;
+
+/**
+ * Log-linear histogram of non-negative long values, eg. durations in nanoseconds. Values below 8
+ * are counted exactly, larger ones in 8 linear sub-buckets per power of 2, so a percentile is
+ * reported within 12.5% of the recorded value. Buckets are allocated once: recording is a few
+ * integer operations and doesn't allocate.
+ *
+ * Not thread safe: record and read from the same thread (Toro uses main thread).
+ */
+public final class Histogram {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // Values up to Long.MAX_VALUE: highest bit is 62
+  private static final int BUCKET_COUNT = (62 - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+  private final long[] counts = new long[BUCKET_COUNT];
+  private long count;
+  private long sum;
+  private long min = Long.MAX_VALUE;
+  private long max = 0;
+
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+
+    counts[indexOf(value)]++;
+    count++;
+    sum += value;
+    if (value < min) {
+      min = value;
+    }
+    if (value > max) {
+      max = value;
+    }
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * @return smallest recorded value, or 0 if nothing is recorded
+   */
+  public long getMin() {
+    return count == 0 ? 0 : min;
+  }
+
+  public long getMax() {
+    return max;
+  }
+
+  public long getSum() {
+    return sum;
+  }
+
+  public double getMean() {
+    return count == 0 ? 0 : (double) sum / count;
+  }
+
+  /**
+   * @param percentile requested percentile, eg. 50.0 for the median
+   * @return highest value of the bucket holding the percentile (not larger than {@link
+   * #getMax()}), or 0 if nothing is recorded
+   */
+  public long getPercentile(@FloatRange(from = 0.0, to = 100.0) double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+
+    long rank = (long) Math.ceil(Math.max(0., Math.min(percentile, 100.)) / 100. * count);
+    if (rank < 1) {
+      rank = 1;
+    }
+
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(highestValueOf(i), max);
+      }
+    }
+    return max;
+  }
+
+  public void reset() {
+    Arrays.fill(counts, 0);
+    count = 0;
+    sum = 0;
+    min = Long.MAX_VALUE;
+    max = 0;
+  }
+
+  @Override public String toString() {
+    return "Histogram{count=" + count
+        + ", min=" + getMin()
+        + ", p50=" + getPercentile(50)
+        + ", p90=" + getPercentile(90)
+        + ", p99=" + getPercentile(99)
+        + ", max=" + max
+        + '}';
+  }
+
+  private static int indexOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  private static long highestValueOf(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+
+    int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    long subBucket = SUB_BUCKETS + index % SUB_BUCKETS;
+    int shift = exponent - SUB_BUCKET_BITS;
+    long highest = ((subBucket + 1) << shift) - 1;
+    return highest < 0 ? Long.MAX_VALUE : highest;  // Top bucket overflows
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.ViewParent;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adapt a list based {@link ToroStrategy} to {@link ToroSnapshotStrategy}.
+ *
+ * @hide
+ */
+final class LegacyStrategyAdapter implements ToroSnapshotStrategy {
+
+  private final ToroStrategy delegate;
+  // Reused across passes. Legacy Strategies may sort this list, it is re-filled each time.
+  private final List<ToroPlayer> candidates = new ArrayList<>();
+
+  LegacyStrategyAdapter(@NonNull ToroStrategy delegate) {
+    this.delegate = delegate;
+  }
+
+  @NonNull static ToroSnapshotStrategy adapt(@NonNull ToroStrategy strategy) {
+    return strategy instanceof ToroSnapshotStrategy ? (ToroSnapshotStrategy) strategy
+        : new LegacyStrategyAdapter(strategy);
+  }
+
+  @Nullable @Override public ToroPlayer findBestPlayer(@NonNull ElectionSnapshot snapshot) {
+    candidates.clear();
+    for (int i = 0, size = snapshot.size(); i < size; i++) {
+      candidates.add(snapshot.getPlayer(i));
+    }
+
+    try {
+      return delegate.findBestPlayer(candidates);
+    } finally {
+      candidates.clear();
+    }
+  }
+
+  @Override public String getDescription() {
+    return delegate.getDescription();
+  }
+
+  @Nullable @Override public ToroPlayer findBestPlayer(List<ToroPlayer> candidates) {
+    return delegate.findBestPlayer(candidates);
+  }
+
+  @Override public boolean allowsToPlay(ToroPlayer player, ViewParent parent) {
+    return delegate.allowsToPlay(player, parent);
+  }
+}
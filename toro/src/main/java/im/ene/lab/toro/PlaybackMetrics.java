@@ -0,0 +1,220 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro;
+
+import android.support.annotation.NonNull;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Latency of playbacks as Users see it, from election to first rendered frame, then buffering
+ * stalls. Aggregated over every player, so prefetch and pooling settings can be compared.
+ * Collected only while {@link Toro#setMetricsEnabled(boolean)} is on, from players reporting
+ * {@link im.ene.lab.toro.media.OnPlaybackTimingListener} milestones to their
+ * {@link PlayerViewHelper}. All durations are in nanoseconds.
+ *
+ * Read from main thread. See {@link Toro#getPlaybackMetrics()}.
+ */
+public final class PlaybackMetrics {
+
+  private static final long UNSET = Long.MIN_VALUE;
+
+  private final Histogram electedToPrepare = new Histogram();
+  private final Histogram prepareToRenderers = new Histogram();
+  private final Histogram renderersToFirstFrame = new Histogram();
+  private final Histogram electedToFirstFrame = new Histogram();
+  private final Histogram stallTime = new Histogram();
+  private long playbacks = 0;
+  private long stalls = 0;
+
+  // Milestones of current playback of each player. Weak, players come and go with their Views.
+  private final Map<ToroPlayer, Span> spans = new WeakHashMap<>();
+
+  PlaybackMetrics() {
+  }
+
+  /**
+   * @return wall time from election to preparation, for players prepared after their election
+   */
+  @NonNull public Histogram getElectedToPrepare() {
+    return electedToPrepare;
+  }
+
+  /**
+   * @return wall time from preparation to built renderers: manifest and initial network requests
+   */
+  @NonNull public Histogram getPrepareToRenderers() {
+    return prepareToRenderers;
+  }
+
+  /**
+   * @return wall time from built renderers to first rendered frame: initial buffering and decoder
+   * start
+   */
+  @NonNull public Histogram getRenderersToFirstFrame() {
+    return renderersToFirstFrame;
+  }
+
+  /**
+   * @return wall time from election to first rendered frame. A player whose first frame is drawn
+   * before its election (eg. prepared ahead) records 0.
+   */
+  @NonNull public Histogram getElectedToFirstFrame() {
+    return electedToFirstFrame;
+  }
+
+  /**
+   * @return duration of buffering stalls after first frame. Its count is the number of stalls.
+   */
+  @NonNull public Histogram getStallTime() {
+    return stallTime;
+  }
+
+  /**
+   * @return number of playbacks which rendered their first frame
+   */
+  public long getPlaybacks() {
+    return playbacks;
+  }
+
+  /**
+   * @return number of buffering stalls after first frame, including ongoing ones
+   */
+  public long getStalls() {
+    return stalls;
+  }
+
+  public void reset() {
+    electedToPrepare.reset();
+    prepareToRenderers.reset();
+    renderersToFirstFrame.reset();
+    electedToFirstFrame.reset();
+    stallTime.reset();
+    playbacks = 0;
+    stalls = 0;
+    spans.clear();
+  }
+
+  void onElected(@NonNull ToroPlayer player, long nanoTime) {
+    if (!Toro.isMetricsEnabled()) {
+      return;
+    }
+
+    Span span = obtain(player);
+    if (span.firstFrame != UNSET) {
+      // Already rendered, User sees it right away
+      electedToFirstFrame.record(0);
+      span.elected = UNSET;
+    } else {
+      span.elected = nanoTime;
+    }
+  }
+
+  void onPrepareStarted(@NonNull ToroPlayer player, long nanoTime) {
+    if (!Toro.isMetricsEnabled()) {
+      return;
+    }
+
+    Span span = obtain(player);
+    if (span.elected != UNSET) {
+      electedToPrepare.record(nanoTime - span.elected);
+    }
+    span.prepare = nanoTime;
+    span.renderers = UNSET;
+    span.firstFrame = UNSET;
+    span.stall = UNSET;
+  }
+
+  void onRenderersBuilt(@NonNull ToroPlayer player, long nanoTime) {
+    if (!Toro.isMetricsEnabled()) {
+      return;
+    }
+
+    Span span = obtain(player);
+    if (span.prepare != UNSET) {
+      prepareToRenderers.record(nanoTime - span.prepare);
+    }
+    span.renderers = nanoTime;
+  }
+
+  void onFirstFrameRendered(@NonNull ToroPlayer player, long nanoTime) {
+    if (!Toro.isMetricsEnabled()) {
+      return;
+    }
+
+    Span span = obtain(player);
+    playbacks++;
+    if (span.renderers != UNSET) {
+      renderersToFirstFrame.record(nanoTime - span.renderers);
+    }
+    if (span.elected != UNSET) {
+      electedToFirstFrame.record(nanoTime - span.elected);
+      span.elected = UNSET;
+    }
+    span.firstFrame = nanoTime;
+  }
+
+  void onRebufferingStarted(@NonNull ToroPlayer player, long nanoTime) {
+    if (!Toro.isMetricsEnabled()) {
+      return;
+    }
+
+    stalls++;
+    obtain(player).stall = nanoTime;
+  }
+
+  void onRebufferingEnded(@NonNull ToroPlayer player, long nanoTime) {
+    if (!Toro.isMetricsEnabled()) {
+      return;
+    }
+
+    Span span = obtain(player);
+    if (span.stall != UNSET) {
+      stallTime.record(nanoTime - span.stall);
+      span.stall = UNSET;
+    }
+  }
+
+  @NonNull private Span obtain(@NonNull ToroPlayer player) {
+    Span span = spans.get(player);
+    if (span == null) {
+      span = new Span();
+      spans.put(player, span);
+    }
+    return span;
+  }
+
+  @Override public String toString() {
+    return "PlaybackMetrics{electedToPrepare=" + electedToPrepare
+        + ", prepareToRenderers=" + prepareToRenderers
+        + ", renderersToFirstFrame=" + renderersToFirstFrame
+        + ", electedToFirstFrame=" + electedToFirstFrame
+        + ", stallTime=" + stallTime
+        + ", playbacks=" + playbacks
+        + ", stalls=" + stalls
+        + '}';
+  }
+
+  private static final class Span {
+
+    long elected = UNSET;
+    long prepare = UNSET;
+    long renderers = UNSET;
+    long firstFrame = UNSET;
+    long stall = UNSET;
+  }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro;
+
+import android.support.annotation.NonNull;
+import java.util.Arrays;
+
+/**
+ * Bounded store of playback positions, with primitive values. Entries are keyed either by media
+ * ID (see {@link ToroPlayer#getMediaId()}) or by a long key, such as an Adapter's stable ID. Both
+ * kinds of key live in the same store, but never match each other.
+ *
+ * Every buffer is allocated up front for the store's capacity. Saving or reading a position
+ * doesn't allocate, neither does evicting. Once the store is full, saving a new key evicts the
+ * entry chosen by its {@link EvictionPolicy}.
+ *
+ * Not thread safe, used from main thread.
+ */
+public final class PlaybackPositionStore {
+
+  public static final int DEFAULT_CAPACITY = 64;
+
+  /**
+   * Chooses the entry to evict once the store is full. Called with a full store, from a save of
+   * a new key. Implementations must not modify the store.
+   */
+  public interface EvictionPolicy {
+
+    /**
+     * @param store the full store
+     * @return slot of the entry to evict, in [0, {@link PlaybackPositionStore#capacity()})
+     */
+    int selectVictim(@NonNull PlaybackPositionStore store);
+  }
+
+  /**
+   * Evict the entry which was saved or read least recently. Default policy.
+   */
+  public static final EvictionPolicy LEAST_RECENTLY_USED = new EvictionPolicy() {
+    @Override public int selectVictim(@NonNull PlaybackPositionStore store) {
+      int victim = 0;
+      for (int i = 1, size = store.capacity(); i < size; i++) {
+        if (store.getLastAccess(i) < store.getLastAccess(victim)) {
+          victim = i;
+        }
+      }
+      return victim;
+    }
+  };
+
+  /**
+   * Evict the entry which was first saved earliest, regardless of later access.
+   */
+  public static final EvictionPolicy OLDEST_FIRST = new EvictionPolicy() {
+    @Override public int selectVictim(@NonNull PlaybackPositionStore store) {
+      int victim = 0;
+      for (int i = 1, size = store.capacity(); i < size; i++) {
+        if (store.getInsertion(i) < store.getInsertion(victim)) {
+          victim = i;
+        }
+      }
+      return victim;
+    }
+  };
+
+  /**
+   * Evict the entry whose position is smallest: losing it costs the User the least to re-watch.
+   * Ties are broken by least recent use.
+   */
+  public static final EvictionPolicy LEAST_PROGRESS = new EvictionPolicy() {
+    @Override public int selectVictim(@NonNull PlaybackPositionStore store) {
+      int victim = 0;
+      for (int i = 1, size = store.capacity(); i < size; i++) {
+        if (store.getPosition(i) < store.getPosition(victim)  //
+            || (store.getPosition(i) == store.getPosition(victim)
+            && store.getLastAccess(i) < store.getLastAccess(victim))) {
+          victim = i;
+        }
+      }
+      return victim;
+    }
+  };
+
+  private static final int NONE = -1;
+
+  private final int capacity;
+  private EvictionPolicy evictionPolicy;
+
+  // Per slot data. A slot keyed by media ID has its String in mediaIds and the ID's hash in keys.
+  // A slot keyed by long key has a null media ID.
+  private final long[] keys;
+  private final String[] mediaIds;
+  private final long[] positions;
+  private final long[] durations;
+  private final long[] lastAccess;
+  private final long[] insertion;
+  private final int[] next;  // next slot in the same bucket, or in the free list
+
+  private final int[] buckets;  // bucket -> first slot
+  private int freeHead;
+  private int size = 0;
+  private long clock = 0;
+
+  // Persists changes, if this store is backed by one. See PositionJournal#open()
+  private PositionJournal journal;
+
+  public PlaybackPositionStore() {
+    this(DEFAULT_CAPACITY, LEAST_RECENTLY_USED);
+  }
+
+  public PlaybackPositionStore(int capacity) {
+    this(capacity, LEAST_RECENTLY_USED);
+  }
+
+  public PlaybackPositionStore(int capacity, @NonNull EvictionPolicy evictionPolicy) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be positive.");
+    }
+
+    //noinspection ConstantConditions
+    if (evictionPolicy == null) {
+      throw new NullPointerException("Eviction policy must not be null");
+    }
+
+    this.capacity = capacity;
+    this.evictionPolicy = evictionPolicy;
+    this.keys = new long[capacity];
+    this.mediaIds = new String[capacity];
+    this.positions = new long[capacity];
+    this.durations = new long[capacity];
+    this.lastAccess = new long[capacity];
+    this.insertion = new long[capacity];
+    this.next = new int[capacity];
+    // Power of 2, at least twice the capacity: short chains
+    int bucketCount = Integer.highestOneBit(Math.max(1, capacity - 1)) << 2;
+    this.buckets = new int[bucketCount];
+    clear();
+  }
+
+  public void setEvictionPolicy(@NonNull EvictionPolicy evictionPolicy) {
+    //noinspection ConstantConditions
+    if (evictionPolicy == null) {
+      throw new NullPointerException("Eviction policy must not be null");
+    }
+    this.evictionPolicy = evictionPolicy;
+  }
+
+  void setJournal(PositionJournal journal) {
+    this.journal = journal;
+  }
+
+  /* BEGIN: keyed by media ID */
+
+  public void put(@NonNull String mediaId, long position, long duration) {
+    int slot = find(mediaId.hashCode(), mediaId);
+    if (slot == NONE) {
+      slot = insert(mediaId.hashCode(), mediaId);
+    }
+    write(slot, position, duration);
+    if (journal != null) {
+      journal.append(mediaId, 0, position, duration);
+    }
+  }
+
+  /**
+   * @return saved position of the media, or defaultValue if there is none
+   */
+  public long get(@NonNull String mediaId, long defaultValue) {
+    int slot = find(mediaId.hashCode(), mediaId);
+    return slot == NONE ? defaultValue : read(slot);
+  }
+
+  public boolean contains(@NonNull String mediaId) {
+    return find(mediaId.hashCode(), mediaId) != NONE;
+  }
+
+  public boolean remove(@NonNull String mediaId) {
+    int slot = find(mediaId.hashCode(), mediaId);
+    if (slot != NONE) {
+      delete(slot);
+      if (journal != null) {
+        journal.appendRemoval(mediaId, 0);
+      }
+    }
+    return slot != NONE;
+  }
+
+  /* END: keyed by media ID */
+
+  /* BEGIN: keyed by long key, eg. Adapter's stable ID */
+
+  public void put(long key, long position, long duration) {
+    int slot = find(key, null);
+    if (slot == NONE) {
+      slot = insert(key, null);
+    }
+    write(slot, position, duration);
+    if (journal != null) {
+      journal.append(null, key, position, duration);
+    }
+  }
+
+  /**
+   * @return saved position of the key, or defaultValue if there is none
+   */
+  public long get(long key, long defaultValue) {
+    int slot = find(key, null);
+    return slot == NONE ? defaultValue : read(slot);
+  }
+
+  public boolean contains(long key) {
+    return find(key, null) != NONE;
+  }
+
+  public boolean remove(long key) {
+    int slot = find(key, null);
+    if (slot != NONE) {
+      delete(slot);
+      if (journal != null) {
+        journal.appendRemoval(null, key);
+      }
+    }
+    return slot != NONE;
+  }
+
+  /* END: keyed by long key */
+
+  public void clear() {
+    if (journal != null) {
+      journal.appendClear();
+    }
+    Arrays.fill(buckets, NONE);
+    Arrays.fill(mediaIds, null);
+    // Every slot is free
+    for (int slot = 0; slot < capacity; slot++) {
+      next[slot] = slot + 1 < capacity ? slot + 1 : NONE;
+    }
+    freeHead = 0;
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  /* BEGIN: slot access, for EvictionPolicy. Every slot is in use while the store is full. */
+
+  public long getPosition(int slot) {
+    return positions[slot];
+  }
+
+  public long getDuration(int slot) {
+    return durations[slot];
+  }
+
+  /**
+   * @return logical time of latest save or read of this slot. Larger is more recent.
+   */
+  public long getLastAccess(int slot) {
+    return lastAccess[slot];
+  }
+
+  /**
+   * @return logical time this slot's key was first saved. Larger is more recent.
+   */
+  public long getInsertion(int slot) {
+    return insertion[slot];
+  }
+
+  /* END: slot access */
+
+  private int bucketOf(long key) {
+    int hash = (int) (key ^ (key >>> 32));
+    hash ^= (hash >>> 16);
+    return hash & (buckets.length - 1);
+  }
+
+  private int find(long key, String mediaId) {
+    for (int slot = buckets[bucketOf(key)]; slot != NONE; slot = next[slot]) {
+      if (keys[slot] == key && (mediaId == null ? mediaIds[slot] == null
+          : mediaId.equals(mediaIds[slot]))) {
+        return slot;
+      }
+    }
+    return NONE;
+  }
+
+  private int insert(long key, String mediaId) {
+    final int slot;
+    if (freeHead != NONE) {
+      slot = freeHead;
+      freeHead = next[slot];
+      size++;
+    } else {
+      slot = evictionPolicy.selectVictim(this);
+      if (slot < 0 || slot >= capacity) {
+        throw new IllegalStateException("Invalid victim slot: " + slot);
+      }
+      unlink(slot);
+    }
+
+    keys[slot] = key;
+    mediaIds[slot] = mediaId;
+    insertion[slot] = ++clock;
+    int bucket = bucketOf(key);
+    next[slot] = buckets[bucket];
+    buckets[bucket] = slot;
+    return slot;
+  }
+
+  private void write(int slot, long position, long duration) {
+    positions[slot] = position;
+    durations[slot] = duration;
+    lastAccess[slot] = ++clock;
+  }
+
+  private long read(int slot) {
+    lastAccess[slot] = ++clock;
+    return positions[slot];
+  }
+
+  private void delete(int slot) {
+    unlink(slot);
+    mediaIds[slot] = null;
+    next[slot] = freeHead;
+    freeHead = slot;
+    size--;
+  }
+
+  private void unlink(int slot) {
+    int bucket = bucketOf(keys[slot]);
+    int prev = NONE;
+    for (int i = buckets[bucket]; i != NONE; prev = i, i = next[i]) {
+      if (i == slot) {
+        if (prev == NONE) {
+          buckets[bucket] = next[i];
+        } else {
+          next[prev] = next[i];
+        }
+        next[slot] = NONE;
+        return;
+      }
+    }
+  }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewParent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Toro-wide prepare scheduler. Each prepared player holds its own decoders, so the number of
+ * prepared players is capped across every registered View. Prepare requests are queued, then
+ * served by priority: elected players first, then by distance from their parent's visible area.
+ * Players which fall out of the budget are demoted: their resources are released, but they stay
+ * in the queue and will be prepared again once they get back into the budget.
+ *
+ * Detached players which still hold a prepared player, eg. one retained with its View's
+ * SurfaceTexture, take the budget too, after every attached one. They are released when it is
+ * short, and never prepared again until they are re-attached.
+ *
+ * Main thread only.
+ *
+ * @hide
+ */
+final class PlayerScheduler implements Runnable {
+
+  static final int DEFAULT_MAX_PREPARED_PLAYERS = 3;
+
+  private static final Comparator<Entry> PRIORITY = new Comparator<Entry>() {
+    @Override public int compare(Entry lhs, Entry rhs) {
+      if (lhs.elected != rhs.elected) {
+        return lhs.elected ? -1 : 1;
+      }
+      if (lhs.detached != rhs.detached) {
+        return lhs.detached ? 1 : -1;
+      }
+      return lhs.distance < rhs.distance ? -1 : (lhs.distance == rhs.distance ? 0 : 1);
+    }
+  };
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final List<Entry> entries = new ArrayList<>();
+
+  private int maxPreparedPlayers = DEFAULT_MAX_PREPARED_PLAYERS;
+  private boolean scheduled = false;
+  // Predicted landing player of a running fling, served right after elected players
+  private ToroPlayer predicted;
+
+  int getMaxPreparedPlayers() {
+    return maxPreparedPlayers;
+  }
+
+  void setMaxPreparedPlayers(int maxPreparedPlayers) {
+    if (maxPreparedPlayers < 1) {
+      throw new IllegalArgumentException("Max prepared players must be positive.");
+    }
+
+    this.maxPreparedPlayers = maxPreparedPlayers;
+    schedule();
+  }
+
+  /**
+   * Queue a prepare request. The player will be prepared once it gets into the budget.
+   */
+  void request(@NonNull ToroPlayer player, @Nullable ViewParent parent) {
+    Entry entry = find(player);
+    if (entry == null) {
+      entries.add(new Entry(player, parent));
+    } else {
+      entry.parent = parent;
+      entry.detached = false;
+    }
+    schedule();
+  }
+
+  /**
+   * Prepare a player ahead of others, as it is predicted to be elected soon. Only one player can
+   * be predicted at a time.
+   *
+   * @param player predicted player, or null to cancel the prediction
+   */
+  void setPredicted(@Nullable ToroPlayer player, @Nullable ViewParent parent) {
+    if (predicted == player) {
+      return;
+    }
+
+    predicted = player;
+    if (player != null) {
+      request(player, parent);
+    } else {
+      schedule();
+    }
+  }
+
+  /**
+   * Drop a player from the queue, for example when it is detached. This frees its slot.
+   */
+  void remove(@NonNull ToroPlayer player) {
+    if (predicted == player) {
+      predicted = null;
+    }
+    Entry entry = find(player);
+    if (entry != null) {
+      entries.remove(entry);
+      schedule();
+    }
+  }
+
+  /**
+   * The player's View is detached. A player which tells its prepared state (see {@link
+   * ToroPlayer.PreparedPlayer}) keeps its slot as long as it holds a prepared player, others are
+   * dropped as by {@link #remove(ToroPlayer)}.
+   */
+  void detach(@NonNull ToroPlayer player) {
+    if (!(player instanceof ToroPlayer.PreparedPlayer)) {
+      remove(player);
+      return;
+    }
+
+    if (predicted == player) {
+      predicted = null;
+    }
+    Entry entry = find(player);
+    if (entry == null) {
+      entry = new Entry(player, null);
+      entries.add(entry);
+    }
+    entry.detached = true;
+    schedule();
+  }
+
+  /**
+   * Drop every player of a parent, eg. when it is unregistered. Their resources are not released.
+   */
+  void removeAll(@NonNull ViewParent parent) {
+    for (int i = entries.size() - 1; i >= 0; i--) {
+      Entry entry = entries.get(i);
+      if (entry.parent == parent) {
+        if (predicted == entry.player) {
+          predicted = null;
+        }
+        entries.remove(i);
+      }
+    }
+  }
+
+  /**
+   * Re-evaluate priorities on next main thread loop. Multiple calls are coalesced.
+   */
+  void schedule() {
+    if (!scheduled) {
+      scheduled = true;
+      handler.post(this);
+    }
+  }
+
+  @Override public void run() {
+    scheduled = false;
+    // 1. Elected players come first. They always keep their resources, but take the budget.
+    for (Map.Entry<RecyclerView, ToroScrollListener> item : Toro.sInstance.mListeners.entrySet()) {
+      ToroPlayer current = item.getValue().getManager().getPlayer();
+      if (current == null) {
+        continue;
+      }
+
+      Entry entry = find(current);
+      if (entry == null) {
+        entry = new Entry(current, item.getKey());
+        entries.add(entry);
+      }
+      entry.elected = true;
+    }
+
+    // 2. Then predicted player, then others by distance from the viewport.
+    for (int i = 0, size = entries.size(); i < size; i++) {
+      Entry entry = entries.get(i);
+      if (entry.elected) {
+        entry.distance = 0;
+      } else if (entry.detached) {
+        entry.distance = Integer.MAX_VALUE;
+      } else if (entry.player == predicted) {
+        entry.distance = -1;
+      } else {
+        entry.distance = ToroGeometry.distanceToViewport(entry.player, entry.parent);
+      }
+    }
+    Collections.sort(entries, PRIORITY);
+
+    int budget = maxPreparedPlayers;
+    for (int i = 0, size = entries.size(); i < size; i++) {
+      Entry entry = entries.get(i);
+      // Players may have prepared or released on their own since last run
+      if (entry.player instanceof ToroPlayer.PreparedPlayer) {
+        entry.prepared = ((ToroPlayer.PreparedPlayer) entry.player).hasPreparedPlayer();
+      }
+
+      if (entry.detached) {
+        if (entry.prepared && budget > 0) {
+          budget--;
+        } else {
+          // Released on its own, or out of budget: nothing to keep it for.
+          if (entry.prepared) {
+            entry.player.releasePlayer();
+          }
+          entries.remove(i--);
+          size--;
+        }
+      } else if (entry.elected) {
+        // Elected player prepares itself when it starts.
+        budget--;
+        entry.prepared = true;
+      } else if (budget > 0) {
+        budget--;
+        if (!entry.prepared) {
+          entry.prepared = true;
+          entry.player.preparePlayer(false);
+        }
+      } else if (entry.prepared) {
+        // Demote. Keep it in queue so it can be prepared again later.
+        entry.prepared = false;
+        entry.player.releasePlayer();
+      }
+      entry.elected = false;
+    }
+  }
+
+  @Nullable private Entry find(@NonNull ToroPlayer player) {
+    for (int i = 0, size = entries.size(); i < size; i++) {
+      if (entries.get(i).player == player) {
+        return entries.get(i);
+      }
+    }
+    return null;
+  }
+
+  private static final class Entry {
+
+    final ToroPlayer player;
+    ViewParent parent;
+    boolean prepared = false;
+    boolean elected = false;
+    boolean detached = false;
+    int distance = Integer.MAX_VALUE;
+
+    Entry(ToroPlayer player, ViewParent parent) {
+      this.player = player;
+      this.parent = parent;
+    }
+  }
+}
@@ -23,6 +23,7 @@ import android.support.v7.widget.RecyclerView;
 import android.view.View;
 import android.view.ViewParent;
 import im.ene.lab.toro.media.Cineer;
+import im.ene.lab.toro.media.OnPlaybackTimingListener;
 import im.ene.lab.toro.media.OnPlayerStateChangeListener;
 import im.ene.lab.toro.media.PlaybackException;
 import im.ene.lab.toro.media.State;
@@ -31,9 +32,10 @@ import im.ene.lab.toro.media.State;
  * Created by eneim on 2/1/16.
  *
  * A helper class to support Video's callbacks from {@link Cineer} as well as {@link
- * RecyclerView.Adapter}
+ * RecyclerView.Adapter}. Playback timing milestones are aggregated in {@link PlaybackMetrics}.
  */
-public abstract class PlayerViewHelper implements OnPlayerStateChangeListener {
+public abstract class PlayerViewHelper
+    implements OnPlayerStateChangeListener, OnPlaybackTimingListener {
 
   public static final String TAG = "PlayerViewHelper";
 
@@ -59,16 +61,35 @@ public abstract class PlayerViewHelper implements OnPlayerStateChangeListener {
    */
   @CallSuper public void onAttachedToParent() {
     ToroScrollListener listener = itemView.getParent() != null ?  //
-        Toro.sInstance.mListeners.get(itemView.getParent().hashCode()) : null;
-    if (listener != null && listener.getManager().getPlayer() == null) {
-      if (player.wantsToPlay() && Toro.getStrategy().allowsToPlay(player, itemView.getParent())) {
-        listener.getManager().setPlayer(player);
-        listener.getManager().restoreVideoState(player.getMediaId());
-        listener.getManager().startPlayback();
-      } else {
-        // Prepare
-        player.preparePlayer(false);
+        Toro.sInstance.mListeners.get(itemView.getParent()) : null;
+    if (listener != null) {
+      listener.onPlayerAttached(player);
+    }
+
+    if (listener == null || listener.isSuspended()) {
+      // Not registered, or off screen (eg. on another ViewPager page). Resuming will elect.
+      return;
+    }
+
+    final RecyclerView parent = (RecyclerView) itemView.getParent();
+    if (Toro.findRegisteredParent(parent) != null) {
+      // Nested list: its outermost list decides whether it may play, prepare meanwhile
+      Toro.sInstance.mScheduler.request(player, parent);
+      if (listener.getManager().getPlayer() == null) {
+        listener.requestElection(parent);
       }
+    } else if (listener.getManager().getPlayer() == null  //
+        && player.wantsToPlay() && Toro.getStrategy().allowsToPlay(player, itemView.getParent())) {
+      listener.getManager().setPlayer(player);
+      Toro.sInstance.mPlaybackMetrics.onElected(player, System.nanoTime());
+      listener.getManager().restoreVideoState(player.getMediaId());
+      listener.getManager().startPlayback();
+    } else if (listener.shouldDeferPrepare()) {
+      // Scrolling fast, this player may be detached before anyone sees it. Prepare it later.
+      listener.deferPrepare(player);
+    } else {
+      // Prepare, once Toro-wide budget allows it
+      Toro.sInstance.mScheduler.request(player, itemView.getParent());
     }
   }
 
@@ -76,17 +97,23 @@ public abstract class PlayerViewHelper implements OnPlayerStateChangeListener {
    * Callback from {@link RecyclerView.Adapter#onViewDetachedFromWindow(RecyclerView.ViewHolder)}
    */
   @CallSuper public void onDetachedFromParent() {
-    ToroScrollListener listener = itemView.getParent() != null ?  //
-        Toro.sInstance.mListeners.get(itemView.getParent().hashCode()) : null;
+    ToroScrollListener listener = Toro.sInstance.mPlayers.get(player);
+    if (listener != null) {
+      listener.onPlayerDetached(player);
+    }
+    // A player kept prepared by its View still takes the Toro-wide budget
+    Toro.sInstance.mScheduler.detach(player);
+
     // Manually save Video state
     if (listener != null && player.equals(listener.getManager().getPlayer())) {
       if (player.isPlaying()) {
-        listener.getManager().saveVideoState( //
+        VideoPlayerManagerImpl.saveState(listener.getManager(), //
             player.getMediaId(), player.getCurrentPosition(), player.getDuration());
-        listener.getManager().pausePlayback();
       }
-      // Release player.
-      player.releasePlayer();
+      // Also if it is still preparing, so it doesn't start playing on re-attach before election
+      listener.getManager().pausePlayback();
+      // Don't release it: the player View does on its own detach, or keeps its texture and player
+      // to resume without a prepare on re-attach.
       // Detach current Player
       listener.getManager().setPlayer(null);
     }
@@ -170,4 +197,27 @@ public abstract class PlayerViewHelper implements OnPlayerStateChangeListener {
     return this.player.onPlaybackError(player, error) &&  //
         Toro.sInstance.onPlaybackError(this.player, player, error);
   }
+
+  /**
+   * Implement {@link OnPlaybackTimingListener}
+   */
+  @Override public final void onPrepareStarted(Cineer player, long nanoTime) {
+    Toro.sInstance.mPlaybackMetrics.onPrepareStarted(this.player, nanoTime);
+  }
+
+  @Override public final void onRenderersBuilt(Cineer player, long nanoTime) {
+    Toro.sInstance.mPlaybackMetrics.onRenderersBuilt(this.player, nanoTime);
+  }
+
+  @Override public final void onFirstFrameRendered(Cineer player, long nanoTime) {
+    Toro.sInstance.mPlaybackMetrics.onFirstFrameRendered(this.player, nanoTime);
+  }
+
+  @Override public final void onRebufferingStarted(Cineer player, long nanoTime) {
+    Toro.sInstance.mPlaybackMetrics.onRebufferingStarted(this.player, nanoTime);
+  }
+
+  @Override public final void onRebufferingEnded(Cineer player, long nanoTime) {
+    Toro.sInstance.mPlaybackMetrics.onRebufferingEnded(this.player, nanoTime);
+  }
 }
@@ -0,0 +1,471 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Persists a {@link PlaybackPositionStore}, so saved positions survive process death.
+ *
+ * Changes are appended to a memory-mapped journal file. Writes to a mapped file land in the page
+ * cache, so they are kept by the system even if the process is killed right after. Main thread
+ * only queues changes: they are written in batches by a background thread, at most
+ * {@link #FLUSH_DELAY_MS} later. The journal is compacted from time to time, keeping only the
+ * latest position of live entries, in recency order.
+ *
+ * {@link #open(Context, String, int)} replays the journal into a new store, so a cold start
+ * restores from memory: lookups are as cheap as the in-memory store's. Usage:
+ *
+ * <pre><code>
+ * PositionJournal journal = PositionJournal.open(context, "feed", 64);
+ * VideoPlayerManager manager = new VideoPlayerManagerImpl(journal.getStore());
+ * </code></pre>
+ *
+ * The store must be used from main thread, as usual.
+ */
+public final class PositionJournal {
+
+  private static final String TAG = "ToroJournal";
+
+  public static final long FLUSH_DELAY_MS = 1000;
+
+  private static final String DIRECTORY = "toro";
+  private static final String EXTENSION = ".journal";
+
+  private static final int MAGIC = 0x546f726f;  // "Toro"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 8;
+  private static final int INITIAL_SIZE = 64 * 1024;
+
+  // Record types. Type byte is written last, so a partially written record ends the journal.
+  private static final byte END = 0;
+  private static final byte PUT_MEDIA_ID = 1;
+  private static final byte PUT_KEY = 2;
+  private static final byte REMOVE_MEDIA_ID = 3;
+  private static final byte REMOVE_KEY = 4;
+  private static final byte CLEAR = 5;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * Open (or create) a journal in the application's files directory, and replay it. This reads
+   * the file on caller thread, which is fast for a compacted journal of a few dozens entries.
+   *
+   * @param context any Context
+   * @param name name of the journal, unique in the application
+   * @param capacity capacity of the store, see {@link PlaybackPositionStore}
+   * @return opened journal, whose store holds the saved positions
+   * @throws IOException if the journal file can not be opened
+   */
+  @NonNull public static PositionJournal open(@NonNull Context context, @NonNull String name,
+      int capacity) throws IOException {
+    File directory = new File(context.getFilesDir(), DIRECTORY);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Can not create directory: " + directory);
+    }
+
+    PlaybackPositionStore store = new PlaybackPositionStore(capacity);
+    PositionJournal journal = new PositionJournal(new File(directory, name + EXTENSION), store);
+    journal.replayInto(store);
+    store.setJournal(journal);
+    return journal;
+  }
+
+  private final File file;
+  private final PlaybackPositionStore store;
+  private final Handler handler;
+
+  // Changes queued by main thread, and the batch being written by the journal thread
+  private final Object lock = new Object();
+  private Batch pending = new Batch();
+  private Batch writing = new Batch();
+  private boolean flushScheduled = false;
+
+  // Journal thread only, except during open()
+  private RandomAccessFile raf;
+  private FileChannel channel;
+  private MappedByteBuffer buffer;
+  private int records = 0;
+
+  private final Runnable flushTask = new Runnable() {
+    @Override public void run() {
+      synchronized (lock) {
+        Batch batch = pending;
+        pending = writing;
+        writing = batch;
+        flushScheduled = false;
+      }
+
+      try {
+        write(writing);
+      } catch (IOException er) {
+        Log.w(TAG, "Failed to write journal: " + file, er);
+      } finally {
+        writing.clear();
+      }
+    }
+  };
+
+  private PositionJournal(File file, PlaybackPositionStore store) throws IOException {
+    this.file = file;
+    this.store = store;
+    map(Math.max(INITIAL_SIZE, (int) file.length()));
+    HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+    thread.start();
+    this.handler = new Handler(thread.getLooper());
+  }
+
+  @NonNull public PlaybackPositionStore getStore() {
+    return store;
+  }
+
+  /**
+   * Write queued changes now, instead of waiting for next batch. Asynchronous.
+   */
+  public void flush() {
+    synchronized (lock) {
+      handler.removeCallbacks(flushTask);
+      flushScheduled = true;
+      handler.post(flushTask);
+    }
+  }
+
+  /**
+   * Write queued changes and close the journal. Its store is not persisted anymore.
+   */
+  public void close() {
+    store.setJournal(null);
+    flush();
+    handler.post(new Runnable() {
+      @Override public void run() {
+        closeFile();
+        Looper looper = Looper.myLooper();
+        if (looper != null) {
+          looper.quit();
+        }
+      }
+    });
+  }
+
+  /* BEGIN: called by PlaybackPositionStore, on main thread */
+
+  void append(String mediaId, long key, long position, long duration) {
+    enqueue(mediaId != null ? PUT_MEDIA_ID : PUT_KEY, mediaId, key, position, duration);
+  }
+
+  void appendRemoval(String mediaId, long key) {
+    enqueue(mediaId != null ? REMOVE_MEDIA_ID : REMOVE_KEY, mediaId, key, 0, 0);
+  }
+
+  void appendClear() {
+    enqueue(CLEAR, null, 0, 0, 0);
+  }
+
+  /* END: called by PlaybackPositionStore */
+
+  private void enqueue(byte type, String mediaId, long key, long position, long duration) {
+    synchronized (lock) {
+      pending.add(type, mediaId, key, position, duration);
+      if (!flushScheduled) {
+        flushScheduled = true;
+        handler.postDelayed(flushTask, FLUSH_DELAY_MS);
+      }
+    }
+  }
+
+  /* BEGIN: file access, on journal thread (or on caller thread during open) */
+
+  private void map(int size) throws IOException {
+    closeFile();
+    raf = new RandomAccessFile(file, "rw");
+    final boolean valid = hasHeader(raf);
+    if (!valid) {
+      // New or unknown file, start over. Extending a file fills it with zeros, ie. END records.
+      raf.setLength(0);
+    }
+    if (raf.length() < size) {
+      raf.setLength(size);
+    }
+    channel = raf.getChannel();
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    if (!valid) {
+      buffer.putInt(0, MAGIC);
+      buffer.putInt(4, VERSION);
+    }
+    buffer.position(HEADER_SIZE);
+  }
+
+  private static boolean hasHeader(RandomAccessFile raf) throws IOException {
+    if (raf.length() < HEADER_SIZE) {
+      return false;
+    }
+    // Big endian, as the mapped buffer
+    raf.seek(0);
+    return raf.readInt() == MAGIC && raf.readInt() == VERSION;
+  }
+
+  private void closeFile() {
+    buffer = null;
+    channel = null;
+    if (raf != null) {
+      try {
+        raf.close();
+      } catch (IOException er) {
+        Log.w(TAG, "Failed to close journal: " + file, er);
+      }
+      raf = null;
+    }
+  }
+
+  /**
+   * Read the journal, and move the write position to its end.
+   *
+   * @return latest position and duration of every live entry, least recently saved first. Keys
+   * are media IDs (String) or long keys (Long).
+   */
+  private LinkedHashMap<Object, long[]> replay() {
+    LinkedHashMap<Object, long[]> entries = new LinkedHashMap<>();
+    buffer.position(HEADER_SIZE);
+    records = 0;
+    int start = HEADER_SIZE;
+    try {
+      while (buffer.remaining() > 0) {
+        start = buffer.position();
+        byte type = buffer.get();
+        Object key;
+        switch (type) {
+          case PUT_MEDIA_ID:
+          case REMOVE_MEDIA_ID:
+            byte[] bytes = new byte[buffer.getShort() & 0xffff];
+            buffer.get(bytes);
+            key = new String(bytes, UTF_8);
+            break;
+          case PUT_KEY:
+          case REMOVE_KEY:
+            key = buffer.getLong();
+            break;
+          case CLEAR:
+            key = null;
+            break;
+          default:
+            // END, or a record written partially
+            buffer.position(start);
+            return entries;
+        }
+
+        if (type == PUT_MEDIA_ID || type == PUT_KEY) {
+          long[] value = new long[] { buffer.getLong(), buffer.getLong() };
+          entries.remove(key);  // Move to the end
+          entries.put(key, value);
+        } else if (type == CLEAR) {
+          entries.clear();
+        } else {
+          entries.remove(key);
+        }
+        records++;
+      }
+    } catch (BufferUnderflowException er) {
+      // Partial record at the end of the file
+      buffer.position(start);
+    }
+    return entries;
+  }
+
+  private void replayInto(PlaybackPositionStore store) {
+    LinkedHashMap<Object, long[]> entries = replay();
+    // Only the most recent entries fit, older ones would be evicted anyway
+    int skip = entries.size() - store.capacity();
+    for (Map.Entry<Object, long[]> entry : entries.entrySet()) {
+      if (skip-- > 0) {
+        continue;
+      }
+      long[] value = entry.getValue();
+      if (entry.getKey() instanceof String) {
+        store.put((String) entry.getKey(), value[0], value[1]);
+      } else {
+        store.put((Long) entry.getKey(), value[0], value[1]);
+      }
+    }
+  }
+
+  private void write(Batch batch) throws IOException {
+    if (buffer == null) {
+      return;
+    }
+
+    for (int i = 0; i < batch.size; i++) {
+      byte[] bytes = batch.mediaIds[i] != null ? batch.mediaIds[i].getBytes(UTF_8) : null;
+      if (bytes != null && bytes.length > 0xffff) {
+        Log.w(TAG, "Media ID is too long to be persisted: " + batch.mediaIds[i]);
+        continue;
+      }
+
+      int recordSize = recordSize(batch.types[i], bytes);
+      if (buffer.remaining() < recordSize + 1) {
+        compact(recordSize + 1);
+      }
+
+      int start = buffer.position();
+      buffer.position(start + 1);
+      if (bytes != null) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+      } else if (batch.types[i] != CLEAR) {
+        buffer.putLong(batch.keys[i]);
+      }
+      if (batch.types[i] == PUT_MEDIA_ID || batch.types[i] == PUT_KEY) {
+        buffer.putLong(batch.positions[i]);
+        buffer.putLong(batch.durations[i]);
+      }
+      // Commit the record
+      buffer.put(start, batch.types[i]);
+      records++;
+    }
+
+    // Periodic compaction: journal mostly holds outdated records
+    if (records > store.capacity() * 8) {
+      compact(0);
+    }
+    buffer.force();
+  }
+
+  private static int recordSize(byte type, byte[] mediaId) {
+    int size = 1;
+    if (mediaId != null) {
+      size += 2 + mediaId.length;
+    } else if (type != CLEAR) {
+      size += 8;
+    }
+    if (type == PUT_MEDIA_ID || type == PUT_KEY) {
+      size += 16;
+    }
+    return size;
+  }
+
+  /**
+   * Rewrite the journal with live entries only, into a new file which then replaces the current
+   * one. The file grows if live entries plus extra bytes don't fit.
+   */
+  private void compact(int extra) throws IOException {
+    LinkedHashMap<Object, long[]> entries = replay();
+    // Keep as many entries as the store does, most recent ones
+    Iterator<Object> iterator = entries.keySet().iterator();
+    for (int skip = entries.size() - store.capacity(); skip > 0; skip--) {
+      iterator.next();
+      iterator.remove();
+    }
+
+    int required = HEADER_SIZE + extra + 1;
+    for (Map.Entry<Object, long[]> entry : entries.entrySet()) {
+      required += entry.getKey() instanceof String  //
+          ? recordSize(PUT_MEDIA_ID, ((String) entry.getKey()).getBytes(UTF_8))
+          : recordSize(PUT_KEY, null);
+    }
+    int size = buffer.capacity();
+    // Leave room to append, so compaction doesn't run on every write
+    while (size < required * 2) {
+      size *= 2;
+    }
+
+    File temp = new File(file.getPath() + ".tmp");
+    RandomAccessFile tempRaf = new RandomAccessFile(temp, "rw");
+    try {
+      tempRaf.setLength(0);
+      tempRaf.setLength(size);
+      MappedByteBuffer tempBuffer =
+          tempRaf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      tempBuffer.putInt(MAGIC);
+      tempBuffer.putInt(VERSION);
+      for (Map.Entry<Object, long[]> entry : entries.entrySet()) {
+        if (entry.getKey() instanceof String) {
+          byte[] bytes = ((String) entry.getKey()).getBytes(UTF_8);
+          tempBuffer.put(PUT_MEDIA_ID);
+          tempBuffer.putShort((short) bytes.length);
+          tempBuffer.put(bytes);
+        } else {
+          tempBuffer.put(PUT_KEY);
+          tempBuffer.putLong((Long) entry.getKey());
+        }
+        tempBuffer.putLong(entry.getValue()[0]);
+        tempBuffer.putLong(entry.getValue()[1]);
+      }
+      tempBuffer.force();
+    } finally {
+      tempRaf.close();
+    }
+
+    closeFile();
+    if (!temp.renameTo(file)) {
+      throw new IOException("Can not replace journal: " + file);
+    }
+    map(size);
+    replay();
+  }
+
+  /* END: file access */
+
+  // Queued changes, as parallel arrays. Grows if a batch is larger than ever before.
+  private static final class Batch {
+
+    byte[] types = new byte[16];
+    String[] mediaIds = new String[16];
+    long[] keys = new long[16];
+    long[] positions = new long[16];
+    long[] durations = new long[16];
+    int size = 0;
+
+    void add(byte type, String mediaId, long key, long position, long duration) {
+      if (size == types.length) {
+        int capacity = size * 2;
+        types = Arrays.copyOf(types, capacity);
+        mediaIds = Arrays.copyOf(mediaIds, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        durations = Arrays.copyOf(durations, capacity);
+      }
+
+      types[size] = type;
+      mediaIds[size] = mediaId;
+      keys[size] = key;
+      positions[size] = position;
+      durations[size] = duration;
+      size++;
+    }
+
+    void clear() {
+      Arrays.fill(mediaIds, 0, size, null);
+      size = 0;
+    }
+  }
+}
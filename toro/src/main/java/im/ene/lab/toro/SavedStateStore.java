@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.View;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Saved playback state of registered Views, grouped by their Activity. A state is the media ID,
+ * position and duration of the View's current player: no View nor player is referenced, so a
+ * back-stacked Activity doesn't keep its item Views reachable.
+ *
+ * States of an Activity are released by {@link #release(Activity)}, which Toro calls when the
+ * Activity is detached or destroyed. Only {@link #obtain(Activity)} creates them: it must not be
+ * called for an Activity which may be released already, use {@link #get(Activity)} then.
+ *
+ * Main thread only.
+ *
+ * @hide
+ */
+final class SavedStateStore {
+
+  static final int DEFAULT_CAPACITY = 3;
+
+  // Activity identity -> its Views' states. Null key holds Views without an Activity.
+  private final Map<Activity, States> states = new IdentityHashMap<>();
+  private int capacity = DEFAULT_CAPACITY;
+
+  /**
+   * @param capacity max number of Views whose state is kept, per Activity. Applied to Activities
+   * whose states are created from now on.
+   */
+  void setCapacity(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be positive.");
+    }
+    this.capacity = capacity;
+  }
+
+  @NonNull States obtain(@Nullable Activity activity) {
+    States result = states.get(activity);
+    if (result == null) {
+      result = new States(capacity);
+      states.put(activity, result);
+    }
+    return result;
+  }
+
+  @Nullable States get(@Nullable Activity activity) {
+    return states.get(activity);
+  }
+
+  void release(@Nullable Activity activity) {
+    states.remove(activity);
+  }
+
+  /**
+   * @return the Activity hosting this View, or null if there is none
+   */
+  @Nullable static Activity activityOf(@NonNull View view) {
+    Context context = view.getContext();
+    while (context instanceof ContextWrapper) {
+      if (context instanceof Activity) {
+        return (Activity) context;
+      }
+      context = ((ContextWrapper) context).getBaseContext();
+    }
+    return null;
+  }
+
+  /**
+   * @return key of a View's state. Its ID if it has one, so a re-created View (eg. in a Fragment)
+   * finds the state of the previous one.
+   */
+  static int keyOf(@NonNull View view) {
+    return view.getId() != View.NO_ID ? view.getId() : System.identityHashCode(view);
+  }
+
+  /**
+   * States of one Activity's Views, as parallel arrays. Least recently saved one is evicted once
+   * full.
+   */
+  static final class States {
+
+    private final int[] keys;
+    private final String[] mediaIds;
+    private final long[] positions;
+    private final long[] durations;
+    private final long[] stamps;
+    private int size = 0;
+    private long clock = 0;
+
+    States(int capacity) {
+      keys = new int[capacity];
+      mediaIds = new String[capacity];
+      positions = new long[capacity];
+      durations = new long[capacity];
+      stamps = new long[capacity];
+    }
+
+    void save(int key, @NonNull String mediaId, long position, long duration) {
+      int index = indexOf(key);
+      if (index < 0) {
+        if (size < keys.length) {
+          index = size++;
+        } else {
+          index = 0;
+          for (int i = 1; i < size; i++) {
+            if (stamps[i] < stamps[index]) {
+              index = i;
+            }
+          }
+        }
+        keys[index] = key;
+      }
+
+      mediaIds[index] = mediaId;
+      positions[index] = position;
+      durations[index] = duration;
+      stamps[index] = ++clock;
+    }
+
+    /**
+     * @return index of the state, or -1 if there is none
+     */
+    int indexOf(int key) {
+      for (int i = 0; i < size; i++) {
+        if (keys[i] == key) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @NonNull String getMediaId(int index) {
+      return mediaIds[index];
+    }
+
+    long getPosition(int index) {
+      return positions[index];
+    }
+
+    long getDuration(int index) {
+      return durations[index];
+    }
+  }
+}
@@ -19,7 +19,6 @@ package im.ene.lab.toro;
 import android.annotation.TargetApi;
 import android.app.Activity;
 import android.app.Application;
-import android.graphics.Rect;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
@@ -31,11 +30,9 @@ import im.ene.lab.toro.media.Cineer;
 import im.ene.lab.toro.media.PlaybackException;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by eneim on 1/31/16.
@@ -53,6 +50,12 @@ public final class Toro implements Application.ActivityLifecycleCallbacks {
   private static final String TAG = "Toro";
   private static final Object LOCK = new Object();
 
+  /**
+   * Default value of {@link #setPrepareVelocityThreshold(float)}, in dp per second. Dragging is
+   * usually slower, flinging faster.
+   */
+  public static final float DEFAULT_PREPARE_VELOCITY_THRESHOLD = 1500.f;
+
   /**
    * Like {@link android.os.Build.VERSION#SDK_INT}, but in a place where it can be conveniently
    * overridden for local testing.
@@ -84,16 +87,36 @@ public final class Toro implements Application.ActivityLifecycleCallbacks {
   // Used to swap strategies if need. It should be a strong reference.
   private static volatile ToroStrategy cachedStrategy;
 
-  // It requires client to detach Activity/unregister View to prevent Memory leak
-  // Use RecyclerView#hashCode() to sync between maps
-  final Map<Integer, RecyclerView> mViews = new ConcurrentHashMap<>();
-  final Map<Integer, ToroScrollListener> mListeners = new ConcurrentHashMap<>();
+  // Keyed by identity, whatever equals() Views or players define. Entries are strong (a listener
+  // references its View and players anyway): they go on unregister, or when their Activity is
+  // destroyed, or detached.
+  final Map<RecyclerView, ToroScrollListener> mListeners = new IdentityHashMap<>();
+  // Reverse index: attached player -> listener of its parent. Maintained by ToroScrollListener.
+  final Map<ToroPlayer, ToroScrollListener> mPlayers = new IdentityHashMap<>();
 
-  // !IMPORTANT: I limit this Map capacity to 3
-  private List<StateLinkedList> mStates;
+  // Saved states, per Activity. Released when the Activity is detached or destroyed.
+  final SavedStateStore mStates = new SavedStateStore();
 
   // Default strategy
   private ToroStrategy mStrategy = Strategies.MOST_VISIBLE_TOP_DOWN;
+  // Current strategy, as used by election
+  private ToroSnapshotStrategy mElectionStrategy =
+      (ToroSnapshotStrategy) Strategies.MOST_VISIBLE_TOP_DOWN;
+
+  // Opt-in: elect on every scrolled frame as well, not only when scrolling stops
+  private boolean mElectWhileScrolling = false;
+
+  // Caps prepared players across every registered View
+  final PlayerScheduler mScheduler = new PlayerScheduler();
+
+  // Off by default. Checked once per pass, so disabled metrics cost nothing else.
+  private boolean mMetricsEnabled = false;
+
+  // Aggregated over every player, see PlayerViewHelper
+  final PlaybackMetrics mPlaybackMetrics = new PlaybackMetrics();
+
+  // Attach-time prepares are deferred while scrolling faster than this, in dp per second
+  private float mPrepareVelocityThreshold = DEFAULT_PREPARE_VELOCITY_THRESHOLD;
 
   /**
    * Attach an activity to Toro. Toro register activity's life cycle to properly handle Screen
@@ -103,12 +126,7 @@ public final class Toro implements Application.ActivityLifecycleCallbacks {
    */
   public static void attach(@NonNull Activity activity) {
     init(activity.getApplication());
-    if (sInstance.mStates == null) {
-      sInstance.mStates = new ArrayList<>();
-    }
-    if (sInstance.mStates.size() == 0) {
-      sInstance.mStates.add(new StateLinkedList(3));
-    }
+    sInstance.mStates.obtain(activity);
   }
 
   /**
@@ -121,8 +139,6 @@ public final class Toro implements Application.ActivityLifecycleCallbacks {
       }
     }
 
-    sInstance.mStates = new ArrayList<>();
-
     if (application != null) {
       application.registerActivityLifecycleCallbacks(sInstance);
     }
@@ -138,20 +154,26 @@ public final class Toro implements Application.ActivityLifecycleCallbacks {
       application.unregisterActivityLifecycleCallbacks(sInstance);
     }
 
-    if (sInstance.mStates != null) {
-      sInstance.mStates.clear();
-    }
-
-    // Cleanup
-    for (RecyclerView view : sInstance.mViews.values()) {
+    // Cleanup. Unregistering modifies the registry, so iterate a copy
+    for (RecyclerView view : new ArrayList<>(sInstance.mListeners.keySet())) {
       unregister(view);
     }
+
+    // After unregistering: it saves the states of the Views, which must not outlive the Activity
+    sInstance.mStates.release(activity);
   }
 
   public static ToroStrategy getStrategy() {
     return sInstance.mStrategy;
   }
 
+  /**
+   * @return current Strategy as a {@link ToroSnapshotStrategy}, adapted if needed
+   */
+  static ToroSnapshotStrategy getElectionStrategy() {
+    return sInstance.mElectionStrategy;
+  }
+
   /**
    * Support custom playing policy
    *
@@ -164,11 +186,131 @@ public final class Toro implements Application.ActivityLifecycleCallbacks {
     }
 
     sInstance.mStrategy = strategy;
+    sInstance.mElectionStrategy = LegacyStrategyAdapter.adapt(strategy);
     dispatchStrategyChanged(strategy);
   }
 
   /**
-   * Register a View (currently, must be one of RecyclerView) to listen to its Videos
+   * Opt-in continuous election. If enabled, Toro also elects while the View is being scrolled, at
+   * most once per frame: a player which no longer wants to play is paused immediately, and the
+   * new winner starts as soon as it qualifies. Disabled by default, Toro only elects when
+   * scrolling stops.
+   *
+   * @param enabled {@code true} to elect while scrolling
+   */
+  public static void setElectWhileScrolling(boolean enabled) {
+    sInstance.mElectWhileScrolling = enabled;
+  }
+
+  public static boolean isElectWhileScrolling() {
+    return sInstance.mElectWhileScrolling;
+  }
+
+  /**
+   * Limit the number of prepared players across every registered View, in every Activity. Each
+   * prepared player holds its own decoders. Elected players are served first, then others by
+   * their distance from the visible area. Players exceeding the cap are released, and prepared
+   * again when they get closer. Detached players which keep a prepared player, see {@link
+   * ToroPlayer.PreparedPlayer}, count too and are released first. Default value is 3.
+   *
+   * @param maxPreparedPlayers max number of prepared players, must be positive
+   */
+  public static void setMaxPreparedPlayers(int maxPreparedPlayers) {
+    sInstance.mScheduler.setMaxPreparedPlayers(maxPreparedPlayers);
+  }
+
+  public static int getMaxPreparedPlayers() {
+    return sInstance.mScheduler.getMaxPreparedPlayers();
+  }
+
+  /**
+   * Players attached while their parent scrolls faster than this velocity don't prepare right
+   * away: during a fast fling most of them are detached a few frames later. Their prepare is
+   * deferred until scrolling slows down or stops. Default value is
+   * {@link #DEFAULT_PREPARE_VELOCITY_THRESHOLD}.
+   *
+   * @param dpPerSecond velocity threshold in dp per second. Zero or negative value disables it.
+   */
+  public static void setPrepareVelocityThreshold(float dpPerSecond) {
+    sInstance.mPrepareVelocityThreshold = dpPerSecond;
+  }
+
+  public static float getPrepareVelocityThreshold() {
+    return sInstance.mPrepareVelocityThreshold;
+  }
+
+  /**
+   * @param view a registered View
+   * @return number of attach-time prepares deferred by velocity threshold on this View, or -1 if
+   * the View is not registered
+   */
+  public static int getDeferredPrepareCount(@NonNull RecyclerView view) {
+    ToroScrollListener listener = sInstance.mListeners.get(view);
+    return listener != null ? listener.getDeferredPrepareCount() : -1;
+  }
+
+  /**
+   * @param view a registered View
+   * @return number of deferred prepares which were avoided, because their player was detached
+   * before scrolling slows down, or -1 if the View is not registered
+   */
+  public static int getAvoidedPrepareCount(@NonNull RecyclerView view) {
+    ToroScrollListener listener = sInstance.mListeners.get(view);
+    return listener != null ? listener.getAvoidedPrepareCount() : -1;
+  }
+
+  /**
+   * Collect {@link ElectionMetrics} of every registered View, and {@link PlaybackMetrics}.
+   * Election passes and playback events record into preallocated histograms. Only the first event
+   * of a player allocates, its milestones entry in {@link PlaybackMetrics}, which is reused for its
+   * next playbacks. So it can stay enabled in production.
+   */
+  public static void setMetricsEnabled(boolean enabled) {
+    sInstance.mMetricsEnabled = enabled;
+  }
+
+  public static boolean isMetricsEnabled() {
+    return sInstance.mMetricsEnabled;
+  }
+
+  /**
+   * @return time to first frame and buffering stalls of every player, collected while metrics are
+   * enabled
+   */
+  @NonNull public static PlaybackMetrics getPlaybackMetrics() {
+    return sInstance.mPlaybackMetrics;
+  }
+
+  /**
+   * @param view a registered View
+   * @return metrics of the View, or null if it is not registered or metrics were never enabled
+   */
+  @Nullable public static ElectionMetrics getMetrics(@NonNull RecyclerView view) {
+    ToroScrollListener listener = sInstance.mListeners.get(view);
+    return listener != null ? listener.getMetrics() : null;
+  }
+
+  /**
+   * @param view a registered View
+   * @return wall time of latest election pass on this View in nanoseconds, or -1 if the View is
+   * not registered
+   */
+  public static long getLastElectionTime(@NonNull RecyclerView view) {
+    ToroScrollListener listener = sInstance.mListeners.get(view);
+    return listener != null ? listener.getLastPassNanos() : -1;
+  }
+
+  /**
+   * Register a View (currently, must be one of RecyclerView) to listen to its Videos.
+   *
+   * Toro watches the View's touches to prepare the player a fling will land on, before the fling
+   * stops. It doesn't take the View's {@link RecyclerView.OnFlingListener}: a SnapHelper can be
+   * attached before or after registering, and then there is no such prediction.
+   *
+   * A View nested in another registered View (eg. horizontal carousels in a vertical feed) doesn't
+   * elect by itself: the outer View's strategy picks the one list which may play, among its own
+   * players and the best player of each nested list. Nested lists which are not picked pause their
+   * player, which may then be released to the prepare budget.
    *
    * @param view which will be registered
    */
@@ -177,11 +319,10 @@ public final class Toro implements Application.ActivityLifecycleCallbacks {
       throw new NullPointerException("Registering View must not be null");
     }
 
-    if (sInstance.mViews.containsKey(view.hashCode())) {
-      if (sInstance.mListeners.containsKey(view.hashCode())) {
-        sInstance.mListeners.get(view.hashCode()).getManager().onRegistered();
-        return;
-      }
+    ToroScrollListener registered = sInstance.mListeners.get(view);
+    if (registered != null) {
+      registered.getManager().onRegistered();
+      return;
     }
 
     // 1. Retrieve current VideoPlayerManager instance
@@ -195,26 +336,29 @@ public final class Toro implements Application.ActivityLifecycleCallbacks {
     }
 
     final ToroScrollListener listener = new ToroScrollListener(playerManager);
+    // Players attached before registering don't go through PlayerViewHelper, collect them once
+    listener.collectPlayers(view);
     view.addOnScrollListener(listener);
+    // Predict fling's landing player. It doesn't take the OnFlingListener, eg. for a SnapHelper.
+    FlingPredictor predictor = new FlingPredictor(view, listener);
+    view.addOnItemTouchListener(predictor);
+    listener.setFlingPredictor(predictor);
     // Save to Cache
-    sInstance.mViews.put(view.hashCode(), view);
-    sInstance.mListeners.put(view.hashCode(), listener);
-
-    final SavedState state;
-    StateLinkedList states = sInstance.mStates.get(sInstance.mStates.size() - 1);
-    if (states.containsKey(view.hashCode())) {
-      state = states.get(view.hashCode());
-    } else {
-      state = new SavedState();
-      states.put(view.hashCode(), state);
+    sInstance.mListeners.put(view, listener);
+    // Cache nesting relations: this View's registered ancestor, and registered Views nested in it
+    // which were registered before it. Then keep them up to date as Views attach and detach.
+    link(view, listener);
+    for (Map.Entry<RecyclerView, ToroScrollListener> entry : sInstance.mListeners.entrySet()) {
+      if (entry.getKey() != view && findRegisteredParent(entry.getKey()) == view) {
+        link(entry.getKey(), entry.getValue());
+      }
     }
+    view.addOnAttachStateChangeListener(NESTING_TRACKER);
+    // States are saved while the Activity lives, see saveState()
+    sInstance.mStates.obtain(SavedStateStore.activityOf(view));
 
-    if (state.player != null) {
-      // Cold start VideoPlayerManager from a saved state
-      playerManager.setPlayer(state.player);
-      playerManager.saveVideoState(state.player.getMediaId(), state.position,
-                                   state.player.getDuration());
-    }
+    // Cold start VideoPlayerManager from a saved state
+    restoreState(view, listener);
 
     // Done registering new View
     playerManager.onRegistered();
@@ -230,37 +374,328 @@ public final class Toro implements Application.ActivityLifecycleCallbacks {
       throw new NullPointerException("Un-registering View must not be null");
     }
 
-    if (sInstance.mListeners.containsKey(view.hashCode())) {
-      // Obtain listener which will be removed
-      ToroScrollListener listener = sInstance.mListeners.remove(view.hashCode());
+    // Obtain listener which will be removed
+    ToroScrollListener listener = sInstance.mListeners.remove(view);
+    if (listener != null) {
       // Process related View
       // Cleanup manager
       if (listener.getManager().getPlayer() != null) {
         final ToroPlayer player = listener.getManager().getPlayer();
         // 1. Save current state
-        final SavedState state;
-        StateLinkedList states = sInstance.mStates.get(sInstance.mStates.size() - 1);
-        if (states.containsKey(view.hashCode())) {
-          state = states.get(view.hashCode());
-        } else {
-          state = new SavedState();
-          states.put(view.hashCode(), state);
-        }
-        state.player = player;
-        state.position = player.getCurrentPosition();
+        saveState(view, player);
 
-        listener.getManager()
-                .saveVideoState(player.getMediaId(), player.getCurrentPosition(), player.getDuration());
+        VideoPlayerManagerImpl.saveState(listener.getManager(), player.getMediaId(),
+            player.getCurrentPosition(), player.getDuration());
         if (player.isPlaying()) {
           listener.getManager().pausePlayback();
         }
       }
 
       listener.getManager().onUnregistered();
+      listener.cancelPendingFrame();
+      FlingPredictor predictor = listener.getFlingPredictor();
+      if (predictor != null) {
+        predictor.release();
+        view.removeOnItemTouchListener(predictor);
+        listener.setFlingPredictor(null);
+      }
+      // Drop reverse index of this View's players
+      listener.clearPlayers();
+      sInstance.mScheduler.removeAll(view);
       view.removeOnScrollListener(listener);
-      // Remove View from cache
-      sInstance.mViews.remove(view.hashCode());
+
+      view.removeOnAttachStateChangeListener(NESTING_TRACKER);
+      unlink(view, listener);
+      // Lists nested in this View nest in its registered ancestor now, if any
+      for (RecyclerView nestedList : new ArrayList<>(listener.nestedChildren)) {
+        ToroScrollListener nested = sInstance.mListeners.get(nestedList);
+        if (nested != null) {
+          link(nestedList, nested);
+        }
+      }
+      listener.nestedChildren.clear();
+    }
+  }
+
+  // Keeps the cached nesting relations of registered Views: a carousel recycled by its feed leaves
+  // the feed's nested lists until it is attached again.
+  private static final View.OnAttachStateChangeListener NESTING_TRACKER =
+      new View.OnAttachStateChangeListener() {
+        @Override public void onViewAttachedToWindow(View view) {
+          ToroScrollListener listener = sInstance.mListeners.get(view);
+          if (listener != null) {
+            link((RecyclerView) view, listener);
+          }
+        }
+
+        @Override public void onViewDetachedFromWindow(View view) {
+          ToroScrollListener listener = sInstance.mListeners.get(view);
+          if (listener != null) {
+            unlink((RecyclerView) view, listener);
+          }
+        }
+      };
+
+  /**
+   * Nest a registered View in its nearest registered ancestor, read from the View hierarchy.
+   */
+  private static void link(@NonNull RecyclerView view, @NonNull ToroScrollListener listener) {
+    unlink(view, listener);
+    RecyclerView parent = findRegisteredParent(view);
+    ToroScrollListener parentListener = parent != null ? sInstance.mListeners.get(parent) : null;
+    if (parentListener != null) {
+      parentListener.nestedChildren.add(view);
+      listener.nestingParent = parent;
+    }
+  }
+
+  private static void unlink(@NonNull RecyclerView view, @NonNull ToroScrollListener listener) {
+    if (listener.nestingParent == null) {
+      return;
+    }
+
+    ToroScrollListener parentListener = sInstance.mListeners.get(listener.nestingParent);
+    if (parentListener != null) {
+      parentListener.nestedChildren.remove(view);
+    }
+    listener.nestingParent = null;
+  }
+
+  /**
+   * @return nearest registered RecyclerView containing this View, or null if there is none
+   */
+  @Nullable static RecyclerView findRegisteredParent(@NonNull View view) {
+    ViewParent parent = view.getParent();
+    while (parent != null) {
+      if (parent instanceof RecyclerView && sInstance.mListeners.containsKey(parent)) {
+        return (RecyclerView) parent;
+      }
+      parent = parent.getParent();
     }
+    return null;
+  }
+
+  /**
+   * @return outermost registered RecyclerView containing this View, or the View itself if it is
+   * not nested in a registered one
+   */
+  @NonNull static RecyclerView findRootList(@NonNull RecyclerView view) {
+    RecyclerView root = view;
+    ToroScrollListener listener;
+    while ((listener = sInstance.mListeners.get(root)) != null && listener.nestingParent != null) {
+      root = listener.nestingParent;
+    }
+    return root;
+  }
+
+  /**
+   * Collect registered Views whose nearest registered ancestor is this View: a vertical feed's
+   * horizontal carousels for example. Relations are cached on register and as Views attach and
+   * detach, so a recycled carousel drops out of its feed, and a pass doesn't scan the registry.
+   */
+  static void findNestedLists(@NonNull RecyclerView view, @NonNull List<RecyclerView> out) {
+    out.clear();
+    ToroScrollListener listener = sInstance.mListeners.get(view);
+    if (listener == null) {
+      return;
+    }
+
+    for (int i = 0, size = listener.nestedChildren.size(); i < size; i++) {
+      out.add(listener.nestedChildren.get(i));
+    }
+  }
+
+  private static void saveState(@NonNull RecyclerView view, @NonNull ToroPlayer player) {
+    if (player.getMediaId() != null) {
+      saveState(view, player.getMediaId(), player.getCurrentPosition(), player.getDuration());
+    }
+  }
+
+  /**
+   * Save the state of a View in the states of its Activity. Does nothing once the Activity is
+   * released (eg. a View unregistered after its Activity is destroyed), so the states of a
+   * destroyed Activity are not created again.
+   */
+  private static void saveState(@NonNull RecyclerView view, @NonNull String mediaId,
+      long position, long duration) {
+    SavedStateStore.States states = sInstance.mStates.get(SavedStateStore.activityOf(view));
+    if (states != null) {
+      states.save(SavedStateStore.keyOf(view), mediaId, position, duration);
+    }
+  }
+
+  private static void restoreState(@NonNull RecyclerView view,
+      @NonNull ToroScrollListener listener) {
+    VideoPlayerManager manager = listener.getManager();
+    SavedStateStore.States states = sInstance.mStates.get(SavedStateStore.activityOf(view));
+    int index = states != null ? states.indexOf(SavedStateStore.keyOf(view)) : -1;
+    if (manager.getPlayer() != null || index < 0) {
+      return;
+    }
+
+    String mediaId = states.getMediaId(index);
+    VideoPlayerManagerImpl.saveState(manager, mediaId, states.getPosition(index),
+        states.getDuration(index));
+    // Player of the saved media, if it is still attached. Else the position is restored once it
+    // is elected again.
+    ToroPlayer player = listener.findPlayer(mediaId);
+    if (player != null) {
+      manager.setPlayer(player);
+    }
+  }
+
+  /**
+   * Limit the number of Views whose playback state is saved, per Activity. Default value is 3.
+   *
+   * @param capacity max number of saved states per Activity, must be positive
+   */
+  public static void setSavedStateCapacity(int capacity) {
+    sInstance.mStates.setCapacity(capacity);
+  }
+
+  /**
+   * Suspend a registered View, eg. a list on a ViewPager page which goes off screen: its current
+   * player is paused, its attached players are released, and it doesn't elect nor prepare until
+   * {@link #resume(RecyclerView)}. Other registered Views are not affected.
+   *
+   * @param view a registered View
+   */
+  public static void suspend(@NonNull RecyclerView view) {
+    ToroScrollListener listener = sInstance.mListeners.get(view);
+    if (listener == null || listener.isSuspended()) {
+      return;
+    }
+
+    listener.setSuspended(true);
+    VideoPlayerManager manager = listener.getManager();
+    ToroPlayer current = manager.getPlayer();
+    if (current != null) {
+      saveState(view, current);
+      if (current.isPlaying()) {
+        VideoPlayerManagerImpl.saveState(manager, current.getMediaId(),
+            current.getCurrentPosition(), current.getDuration());
+        manager.pausePlayback();
+      }
+      manager.setPlayer(null);
+    }
+
+    releasePlayers(listener);
+  }
+
+  private static void releasePlayers(@NonNull ToroScrollListener listener) {
+    List<ToroPlayer> players = listener.getPlayers();
+    for (int i = 0, size = players.size(); i < size; i++) {
+      sInstance.mScheduler.remove(players.get(i));
+      players.get(i).releasePlayer();
+    }
+  }
+
+  /**
+   * Move the current playback of a registered View to a player out of it, eg. a fullscreen one,
+   * without pausing it. {@code handOff} moves the playback, then the View is suspended as by {@link
+   * #suspend(RecyclerView)}: its state is saved and it has no current player anymore.
+   *
+   * Once the playback is moved back, call {@link #takeBack(RecyclerView, ToroPlayer)}.
+   *
+   * @param view a registered View
+   * @param handOff moves the playback of the View's current player
+   * @return true if the playback is handed off
+   */
+  public static boolean handOff(@NonNull RecyclerView view, @NonNull HandOff handOff) {
+    ToroScrollListener listener = sInstance.mListeners.get(view);
+    if (listener == null || listener.isSuspended()) {
+      return false;
+    }
+
+    VideoPlayerManager manager = listener.getManager();
+    ToroPlayer current = manager.getPlayer();
+    if (current == null) {
+      return false;
+    }
+
+    // Position is unknown once the playback is gone
+    String mediaId = current.getMediaId();
+    long position = current.getCurrentPosition();
+    long duration = current.getDuration();
+    if (!handOff.handOff(current)) {
+      return false;
+    }
+
+    listener.setSuspended(true);
+    if (mediaId != null) {
+      saveState(view, mediaId, position, duration);
+      VideoPlayerManagerImpl.saveState(manager, mediaId, position, duration);
+    }
+    manager.setPlayer(null);
+    releasePlayers(listener);
+    return true;
+  }
+
+  /**
+   * Resume a View whose playback was handed off by {@link #handOff(RecyclerView, HandOff)}. If
+   * the playback is moved back to one of its players, that player becomes the current one, so it
+   * plays on: it is neither restarted nor seeked.
+   *
+   * @param view a registered View
+   * @param player player of the View the playback is moved back to
+   */
+  public static void takeBack(@NonNull RecyclerView view, @NonNull ToroPlayer player) {
+    ToroScrollListener listener = sInstance.mListeners.get(view);
+    if (listener == null || !listener.isSuspended()) {
+      return;
+    }
+
+    VideoPlayerManager manager = listener.getManager();
+    // The player may have been detached meanwhile
+    if (sInstance.mPlayers.get(player) == listener && manager.getPlayer() == null) {
+      if (player.isPlaying()) {
+        VideoPlayerManagerImpl.saveState(manager, player.getMediaId(),
+            player.getCurrentPosition(), player.getDuration());
+      }
+      manager.setPlayer(player);
+    }
+    resume(view);
+  }
+
+  /**
+   * Resume a View suspended by {@link #suspend(RecyclerView)}: only this View re-elects, and its
+   * attached players are queued for prepare again.
+   *
+   * @param view a registered View
+   */
+  public static void resume(@NonNull RecyclerView view) {
+    ToroScrollListener listener = sInstance.mListeners.get(view);
+    if (listener == null || !listener.isSuspended()) {
+      return;
+    }
+
+    listener.setSuspended(false);
+    restoreState(view, listener);
+    List<ToroPlayer> players = listener.getPlayers();
+    for (int i = 0, size = players.size(); i < size; i++) {
+      sInstance.mScheduler.request(players.get(i), view);
+    }
+    listener.onScrollStateChanged(view, RecyclerView.SCROLL_STATE_IDLE);
+  }
+
+  /**
+   * @return true if the View is registered and suspended
+   */
+  public static boolean isSuspended(@NonNull RecyclerView view) {
+    ToroScrollListener listener = sInstance.mListeners.get(view);
+    return listener != null && listener.isSuspended();
+  }
+
+  /**
+   * Moves a playback out of a registered View. See {@link #handOff(RecyclerView, HandOff)}.
+   */
+  public interface HandOff {
+
+    /**
+     * @param player current player of the View
+     * @return true if its playback is moved to another player
+     */
+    boolean handOff(@NonNull ToroPlayer player);
   }
 
   public static void rest(boolean willPause) {
@@ -281,16 +716,14 @@ public final class Toro implements Application.ActivityLifecycleCallbacks {
   }
 
   private static void dispatchStrategyChanged(ToroStrategy newStrategy) {
-    for (RecyclerView view : sInstance.mViews.values()) {
-      ToroScrollListener listener = sInstance.mListeners.get(view.hashCode());
-      if (listener != null) { // Trigger an 'idle scroll'
-        listener.onScrollStateChanged(view, RecyclerView.SCROLL_STATE_IDLE);
-      }
+    for (Map.Entry<RecyclerView, ToroScrollListener> entry : sInstance.mListeners.entrySet()) {
+      // Trigger an 'idle scroll'
+      entry.getValue().onScrollStateChanged(entry.getKey(), RecyclerView.SCROLL_STATE_IDLE);
     }
   }
 
   @Override public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
-    mStates.add(new StateLinkedList(3));
+    mStates.obtain(activity);
   }
 
   @Override public void onActivityStarted(Activity activity) {
@@ -312,23 +745,19 @@ public final class Toro implements Application.ActivityLifecycleCallbacks {
   }
 
   @Override public void onActivityDestroyed(Activity activity) {
-    if (mStates != null) {
-      StateLinkedList states = mStates.get(mStates.size() - 1);
-      for (SavedState state : states.values()) {
-        if (state.player != null) {
-          // Release resource if there is any
-          state.player.pause();
-          state.player.onActivityInactive();
-          // Release this player
-          state.player = null;
-        }
+    // Views not unregistered by the client must not keep the Activity reachable. Unregistering
+    // modifies the registry, so iterate a copy.
+    for (RecyclerView view : new ArrayList<>(mListeners.keySet())) {
+      if (SavedStateStore.activityOf(view) == activity) {
+        unregister(view);
       }
-
-      mStates.remove(mStates.size()-1);
     }
+    // Players were paused when the Activity was paused, only states are left to release
+    mStates.release(activity);
   }
 
-  // Built-in Strategies
+  // Built-in Strategies. They elect from an ElectionSnapshot in one linear scan. The list based
+  // versions keep the same result for clients which delegate to them.
   public static final class Strategies {
 
     /**
@@ -336,32 +765,19 @@ public final class Toro implements Application.ActivityLifecycleCallbacks {
      * ToroPlayer#visibleAreaOffset()}). In case there are more than one item, chose the first item
      * on the top
      */
-    public static final ToroStrategy MOST_VISIBLE_TOP_DOWN = new ToroStrategy() {
+    public static final ToroStrategy MOST_VISIBLE_TOP_DOWN = new ToroSnapshotStrategy() {
 
       @Override public String getDescription() {
         return "Most visible item, top - down";
       }
 
-      @Nullable @Override public ToroPlayer findBestPlayer(List<ToroPlayer> candidates) {
-        if (candidates == null || candidates.size() < 1) {
-          return null;
-        }
-
-        // 1. Sort candidates by the order of player
-        Collections.sort(candidates, new Comparator<ToroPlayer>() {
-          @Override public int compare(ToroPlayer lhs, ToroPlayer rhs) {
-            return lhs.getPlayOrder() - rhs.getPlayOrder();
-          }
-        });
-
-        // 2. Sort candidates by the visible offset
-        Collections.sort(candidates, new Comparator<ToroPlayer>() {
-          @Override public int compare(ToroPlayer lhs, ToroPlayer rhs) {
-            return Float.compare(rhs.visibleAreaOffset(), lhs.visibleAreaOffset());
-          }
-        });
+      @Nullable @Override public ToroPlayer findBestPlayer(@NonNull ElectionSnapshot snapshot) {
+        int index = snapshot.mostVisible(true);
+        return index >= 0 ? snapshot.getPlayer(index) : null;
+      }
 
-        return candidates.get(0);
+      @Nullable @Override public ToroPlayer findBestPlayer(List<ToroPlayer> candidates) {
+        return mostVisible(candidates, true);
       }
 
       @Override public boolean allowsToPlay(ToroPlayer player, ViewParent parent) {
@@ -375,24 +791,18 @@ public final class Toro implements Application.ActivityLifecycleCallbacks {
      * on the top. But if current player is still playable, but not staying on the top, we still
      * keep it.
      */
-    public static final ToroStrategy MOST_VISIBLE_TOP_DOWN_KEEP_LAST = new ToroStrategy() {
+    public static final ToroStrategy MOST_VISIBLE_TOP_DOWN_KEEP_LAST = new ToroSnapshotStrategy() {
       @Override public String getDescription() {
         return "Most visible item, top - down. Keep last playing item.";
       }
 
-      @Nullable @Override public ToroPlayer findBestPlayer(List<ToroPlayer> candidates) {
-        if (candidates == null || candidates.size() < 1) {
-          return null;
-        }
-
-        // Sort candidates by the visible offset
-        Collections.sort(candidates, new Comparator<ToroPlayer>() {
-          @Override public int compare(ToroPlayer lhs, ToroPlayer rhs) {
-            return Float.compare(rhs.visibleAreaOffset(), lhs.visibleAreaOffset());
-          }
-        });
+      @Nullable @Override public ToroPlayer findBestPlayer(@NonNull ElectionSnapshot snapshot) {
+        int index = snapshot.mostVisible(false);
+        return index >= 0 ? snapshot.getPlayer(index) : null;
+      }
 
-        return candidates.get(0);
+      @Nullable @Override public ToroPlayer findBestPlayer(List<ToroPlayer> candidates) {
+        return mostVisible(candidates, false);
       }
 
       @Override public boolean allowsToPlay(ToroPlayer player, ViewParent parent) {
@@ -403,24 +813,28 @@ public final class Toro implements Application.ActivityLifecycleCallbacks {
     /**
      * Scan top down of candidates, chose the first playable Video
      */
-    public static final ToroStrategy FIRST_PLAYABLE_TOP_DOWN = new ToroStrategy() {
+    public static final ToroStrategy FIRST_PLAYABLE_TOP_DOWN = new ToroSnapshotStrategy() {
       @Override public String getDescription() {
         return "First playable item, top - down";
       }
 
+      @Nullable @Override public ToroPlayer findBestPlayer(@NonNull ElectionSnapshot snapshot) {
+        int index = snapshot.firstByPlayOrder();
+        return index >= 0 ? snapshot.getPlayer(index) : null;
+      }
+
       @Nullable @Override public ToroPlayer findBestPlayer(List<ToroPlayer> candidates) {
         if (candidates == null || candidates.size() < 1) {
           return null;
         }
 
-        // 1. Sort candidates by the order of player
-        Collections.sort(candidates, new Comparator<ToroPlayer>() {
-          @Override public int compare(ToroPlayer lhs, ToroPlayer rhs) {
-            return lhs.getPlayOrder() - rhs.getPlayOrder();
+        ToroPlayer best = null;
+        for (ToroPlayer candidate : candidates) {
+          if (best == null || candidate.getPlayOrder() < best.getPlayOrder()) {
+            best = candidate;
           }
-        });
-
-        return candidates.get(0);
+        }
+        return best;
       }
 
       @Override public boolean allowsToPlay(ToroPlayer player, ViewParent parent) {
@@ -432,71 +846,69 @@ public final class Toro implements Application.ActivityLifecycleCallbacks {
      * Scan top down (by layout direction) of candidates, chose the first playable Video. But if
      * current player is still playable, but not on the top, we keep using it
      */
-    public static final ToroStrategy FIRST_PLAYABLE_TOP_DOWN_KEEP_LAST = new ToroStrategy() {
+    public static final ToroStrategy FIRST_PLAYABLE_TOP_DOWN_KEEP_LAST =
+        new ToroSnapshotStrategy() {
 
-      @Override public String getDescription() {
-        return "First playable item, top - down. Keep last playing item.";
-      }
+          @Override public String getDescription() {
+            return "First playable item, top - down. Keep last playing item.";
+          }
 
-      @Nullable @Override public ToroPlayer findBestPlayer(List<ToroPlayer> candidates) {
-        if (candidates == null || candidates.size() < 1) {
-          return null;
-        }
+          @Nullable @Override
+          public ToroPlayer findBestPlayer(@NonNull ElectionSnapshot snapshot) {
+            return snapshot.size() > 0 ? snapshot.getPlayer(0) : null;
+          }
 
-        return candidates.get(0);
+          @Nullable @Override public ToroPlayer findBestPlayer(List<ToroPlayer> candidates) {
+            if (candidates == null || candidates.size() < 1) {
+              return null;
+            }
+
+            return candidates.get(0);
+          }
+
+          @Override public boolean allowsToPlay(ToroPlayer player, ViewParent parent) {
+            return doAllowsToPlay(player, parent);
+          }
+        };
+
+    /**
+     * Same result as sorting candidates by visible offset (and by play order if byPlayOrder is
+     * true), but measures each candidate once.
+     */
+    @Nullable static ToroPlayer mostVisible(List<ToroPlayer> candidates, boolean byPlayOrder) {
+      if (candidates == null || candidates.size() < 1) {
+        return null;
       }
 
-      @Override public boolean allowsToPlay(ToroPlayer player, ViewParent parent) {
-        return doAllowsToPlay(player, parent);
+      ToroPlayer best = null;
+      float bestOffset = 0.f;
+      for (ToroPlayer candidate : candidates) {
+        float offset = candidate.visibleAreaOffset();
+        if (best == null || offset > bestOffset  //
+            || (byPlayOrder && offset == bestOffset
+            && candidate.getPlayOrder() < best.getPlayOrder())) {
+          best = candidate;
+          bestOffset = offset;
+        }
       }
-    };
+      return best;
+    }
   }
 
   /**
    * @hide
    */
   private static boolean doAllowsToPlay(ToroPlayer player, ViewParent parent) {
-    Rect windowRect = new Rect();
-    Rect parentRect = new Rect();
-    if (parent instanceof View) {
-      // 1. Get Window's vision from parent
-      ((View) parent).getWindowVisibleDisplayFrame(windowRect);
-      // 2. Get parent's global rect
-      ((View) parent).getGlobalVisibleRect(parentRect, null);
-    }
-    // 3. Get player global rect
-    View videoView = player.getPlayerView();
-    Rect videoRect = new Rect();
-    // Headache !!!
-    int[] screenLoc = new int[2];
-    videoView.getLocationOnScreen(screenLoc);
-    videoRect.left += screenLoc[0];
-    videoRect.right += screenLoc[0] + videoView.getWidth();
-    videoRect.top += screenLoc[1];
-    videoRect.bottom += screenLoc[1] + videoView.getHeight();
-
-    // Condition: window contains parent, and parent contains Video or parent intersects Video
-    return windowRect.contains(parentRect) && (parentRect.contains(videoRect)
-            || parentRect.intersect(videoRect));
+    return ToroGeometry.allowsToPlay(player, parent);
   }
 
   // Centralize Video state callbacks
 
   void onVideoPrepared(@NonNull ToroPlayer player, @NonNull View itemView,
                        @Nullable ViewParent parent, @Nullable Cineer mediaPlayer) {
-    VideoPlayerManager manager = null;
-    ToroScrollListener listener;
-    RecyclerView view;
     // Find correct Player manager for this player
-    for (Map.Entry<Integer, ToroScrollListener> entry : Toro.sInstance.mListeners.entrySet()) {
-      Integer key = entry.getKey();
-      view = Toro.sInstance.mViews.get(key);
-      if (view != null && view == parent) { // Found the parent view in our cache
-        listener = entry.getValue();
-        manager = listener.getManager();
-        break;
-      }
-    }
+    ToroScrollListener listener = parent != null ? Toro.sInstance.mListeners.get(parent) : null;
+    VideoPlayerManager manager = listener != null ? listener.getManager() : null;
 
     if (manager == null) {
       return;
@@ -508,6 +920,11 @@ public final class Toro implements Application.ActivityLifecycleCallbacks {
         manager.restoreVideoState(player.getMediaId());
         manager.startPlayback();
       }
+    } else if (parent instanceof RecyclerView && findRegisteredParent((View) parent) != null) {
+      // Nested list: only its outermost list decides whether it may play
+      if (manager.getPlayer() == null) {
+        listener.requestElection((RecyclerView) parent);
+      }
     } else {
       // There is no current player, but this guy is prepared, so let's him go ...
       if (manager.getPlayer() == null) {
@@ -521,21 +938,22 @@ public final class Toro implements Application.ActivityLifecycleCallbacks {
     }
   }
 
+  /**
+   * @return the manager whose current player is this player, or null
+   */
+  @Nullable private VideoPlayerManager findManager(@NonNull ToroPlayer player) {
+    ToroScrollListener listener = mPlayers.get(player);
+    VideoPlayerManager manager = listener != null ? listener.getManager() : null;
+    return manager != null && player.equals(manager.getPlayer()) ? manager : null;
+  }
+
   void onPlaybackCompletion(@NonNull ToroPlayer player, @Nullable Cineer mp) {
     // 1. Internal jobs
-    VideoPlayerManager manager = null;
-    for (ToroScrollListener listener : Toro.sInstance.mListeners.values()) {
-      manager = listener.getManager();
-      if (player == manager.getPlayer()) {
-        break;
-      } else {
-        manager = null;
-      }
-    }
+    VideoPlayerManager manager = findManager(player);
 
     // Normally stop playback
     if (manager != null) {
-      manager.saveVideoState(player.getMediaId(), 0L, player.getDuration());
+      VideoPlayerManagerImpl.saveState(manager, player.getMediaId(), 0, player.getDuration());
       manager.stopPlayback();
       // It's loop-able, so restart it immediately
       if (player.isLoopAble()) {
@@ -548,36 +966,26 @@ public final class Toro implements Application.ActivityLifecycleCallbacks {
 
   boolean onPlaybackError(@NonNull ToroPlayer player, @Nullable Cineer mp,
                           @NonNull PlaybackException error) {
-    for (ToroScrollListener listener : Toro.sInstance.mListeners.values()) {
-      VideoPlayerManager manager = listener.getManager();
-      if (player.equals(manager.getPlayer())) {
-        manager.saveVideoState(player.getMediaId(), 0L, player.getDuration());
-        manager.pausePlayback();
-      }
+    VideoPlayerManager manager = findManager(player);
+    if (manager != null) {
+      VideoPlayerManagerImpl.saveState(manager, player.getMediaId(), 0, player.getDuration());
+      manager.pausePlayback();
     }
     return true;
   }
 
   // Update to correctly support API 24+
   private void dispatchOnActivityInactive(Activity activity) {
-    for (Map.Entry<Integer, ToroScrollListener> entry : mListeners.entrySet()) {
+    for (Map.Entry<RecyclerView, ToroScrollListener> entry : mListeners.entrySet()) {
       ToroScrollListener listener = entry.getValue();
-      StateLinkedList states = mStates.get(mStates.size() - 1);
-      SavedState state = states.get(entry.getKey());
-      if (state == null) {
-        state = new SavedState();
-        states.put(entry.getKey(), state);
-      }
-
       VideoPlayerManager manager = listener.getManager();
       if (manager.getPlayer() != null) {
         // Save state
-        state.player = manager.getPlayer();
-        state.position = manager.getPlayer().getCurrentPosition();
+        saveState(entry.getKey(), manager.getPlayer());
 
         if (manager.getPlayer().isPlaying()) {
-          manager.saveVideoState(manager.getPlayer().getMediaId(),
-                                 manager.getPlayer().getCurrentPosition(), manager.getPlayer().getDuration());
+          VideoPlayerManagerImpl.saveState(manager, manager.getPlayer().getMediaId(),
+              manager.getPlayer().getCurrentPosition(), manager.getPlayer().getDuration());
           manager.pausePlayback();
         }
 
@@ -587,19 +995,16 @@ public final class Toro implements Application.ActivityLifecycleCallbacks {
   }
 
   private void dispatchOnActivityActive(Activity activity) {
-    for (Map.Entry<Integer, ToroScrollListener> entry : mListeners.entrySet()) {
+    for (Map.Entry<RecyclerView, ToroScrollListener> entry : mListeners.entrySet()) {
       ToroScrollListener listener = entry.getValue();
-      StateLinkedList states = mStates.get(mStates.size() - 1);
-      SavedState state = states.get(entry.getKey());
-      VideoPlayerManager manager = listener.getManager();
-      if (manager.getPlayer() == null) {
-        if (state != null && state.player != null) {
-          manager.setPlayer(state.player);
-          manager.saveVideoState(state.player.getMediaId(), state.position,
-                                 state.player.getDuration());
-        }
+      if (listener.isSuspended()) {
+        // Off screen, stays paused until resumed
+        continue;
       }
 
+      VideoPlayerManager manager = listener.getManager();
+      restoreState(entry.getKey(), listener);
+
       if (manager.getPlayer() != null) {
         manager.getPlayer().onActivityActive();
         manager.restoreVideoState(manager.getPlayer().getMediaId());
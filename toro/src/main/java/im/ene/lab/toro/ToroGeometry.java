@@ -0,0 +1,335 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro;
+
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewParent;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Visibility geometry used by election. All methods must be called from main thread.
+ *
+ * During an election pass (between {@link #beginPass} and {@link #endPass()}), the Window frame
+ * is computed once, and the rect of each parent once, shared by every candidate. Outside of a pass
+ * they are re-computed on each call. Either way, scratch buffers are reused so nothing is
+ * allocated.
+ *
+ * Election reads Views through a {@link Provider}: {@link #VIEWS} by default. Benchmarks install
+ * a fake one to run election passes on the JVM, without Views.
+ *
+ * @hide
+ */
+final class ToroGeometry {
+
+  private ToroGeometry() {
+    throw new AssertionError("Not supported");
+  }
+
+  /**
+   * Geometry an election pass reads from Views.
+   */
+  interface Provider {
+
+    /**
+     * Fill {@code out} with players registered to the listener whose View intersects the parent's
+     * viewport, in layout order.
+     */
+    void findVisiblePlayers(@NonNull RecyclerView parent, @NonNull ToroScrollListener listener,
+        @NonNull List<ToroPlayer> out);
+
+    /**
+     * See {@link ToroStrategy#allowsToPlay(ToroPlayer, ViewParent)}
+     */
+    boolean allowsToPlay(@NonNull ToroPlayer player, @Nullable ViewParent parent);
+
+    /**
+     * See {@link ToroUtil#visibleAreaOffset(ToroPlayer, ViewParent)}
+     */
+    float visibleAreaOffset(@NonNull ToroPlayer player, @Nullable ViewParent parent);
+
+    /**
+     * Set {@code out} to the player View's visible rect, in screen coordinates.
+     */
+    void getVisibleRect(@NonNull ToroPlayer player, @NonNull Rect out);
+  }
+
+  // Grows when a pass sees more visible children
+  private static final int INITIAL_VISIBLE_CAPACITY = 16;
+  // Grows when a pass sees more nested lists
+  private static final int INITIAL_PASS_PARENT_CAPACITY = 4;
+
+  /**
+   * Measures actual Views. Visible players come from the Layout Manager's bulk query, see {@link
+   * ToroLayoutManager.VisibleChildren}.
+   */
+  static final Provider VIEWS = new Provider() {
+
+    // Visible children of the parent, filled by the bulk query
+    private int[] visibleIndices = new int[INITIAL_VISIBLE_CAPACITY];
+
+    @Override public void findVisiblePlayers(@NonNull RecyclerView parent,
+        @NonNull ToroScrollListener listener, @NonNull List<ToroPlayer> out) {
+      final RecyclerView.LayoutManager layoutManager = parent.getLayoutManager();
+      final ToroLayoutManager.VisibleChildren query = VisibleChildrenQueries.of(layoutManager);
+      if (query == null) {
+        return;
+      }
+
+      int count = query.findVisibleChildren(parent, visibleIndices);
+      if (count > visibleIndices.length) {
+        visibleIndices = new int[count];
+        count = Math.min(count, query.findVisibleChildren(parent, visibleIndices));
+      }
+
+      for (int i = 0; i < count; i++) {
+        final View child = layoutManager.getChildAt(visibleIndices[i]);
+        if (child == null || child.getParent() != parent) {
+          continue;
+        }
+
+        final RecyclerView.ViewHolder viewHolder = parent.getChildViewHolder(child);
+        // Toro's reverse index, not a scan of the registered players
+        if (viewHolder instanceof ToroPlayer
+            && Toro.sInstance.mPlayers.get(viewHolder) == listener) {
+          out.add((ToroPlayer) viewHolder);
+        }
+      }
+    }
+
+    @Override
+    public boolean allowsToPlay(@NonNull ToroPlayer player, @Nullable ViewParent parent) {
+      return doAllowsToPlay(player, parent);
+    }
+
+    @Override
+    public float visibleAreaOffset(@NonNull ToroPlayer player, @Nullable ViewParent parent) {
+      return doVisibleAreaOffset(player, parent);
+    }
+
+    @Override public void getVisibleRect(@NonNull ToroPlayer player, @NonNull Rect out) {
+      player.getPlayerView().getGlobalVisibleRect(out);
+    }
+  };
+
+  private static Provider provider = VIEWS;
+
+  /**
+   * @param provider geometry source of election, or null for {@link #VIEWS}
+   */
+  static void setProvider(@Nullable Provider provider) {
+    ToroGeometry.provider = provider != null ? provider : VIEWS;
+  }
+
+  private static final Rect windowRect = new Rect();
+  private static final Rect parentRect = new Rect();
+  private static final Rect videoRect = new Rect();
+  private static final int[] screenLocation = new int[2];
+
+  // Used by distanceToViewport(), so it doesn't invalidate the rects cached for a pass
+  private static final Rect viewportRect = new Rect();
+
+  // Parent whose rect is in parentRect. Null if there is no pass running.
+  private static ViewParent passParent;
+  // Parents measured during the running pass, by identity, and their rects. A pass over nested
+  // lists switches between them.
+  private static ViewParent[] passParents = new ViewParent[INITIAL_PASS_PARENT_CAPACITY];
+  private static Rect[] passParentRects = newRects(0, INITIAL_PASS_PARENT_CAPACITY);
+  private static int passParentCount = 0;
+  private static boolean windowMeasured = false;
+  // Metrics of the running pass, null if there is no pass running or metrics are disabled
+  private static ElectionMetrics passMetrics;
+  private static boolean inPass = false;
+
+  static void beginPass(@Nullable ViewParent parent, @Nullable ElectionMetrics metrics) {
+    inPass = true;
+    windowMeasured = false;
+    passParent = null;
+    passParentCount = 0;
+    ensureParent(parent);
+    passMetrics = metrics;
+  }
+
+  static void endPass() {
+    // Don't keep measured Views reachable
+    for (int i = 0; i < passParentCount; i++) {
+      passParents[i] = null;
+    }
+    passParentCount = 0;
+    passParent = null;
+    passMetrics = null;
+    inPass = false;
+  }
+
+  private static void ensureParent(@Nullable ViewParent parent) {
+    if (!inPass) {
+      measureWindow(parent);
+      measureParent(parent);
+      return;
+    }
+
+    if (parent == null) {
+      // Not visible, whatever the Window frame is
+      parentRect.setEmpty();
+      passParent = null;
+      return;
+    }
+
+    if (parent == passParent) {
+      return;
+    }
+
+    passParent = parent;
+    // Nested lists share their Window
+    if (!windowMeasured && parent instanceof View) {
+      measureWindow(parent);
+      windowMeasured = true;
+    }
+
+    for (int i = 0; i < passParentCount; i++) {
+      if (passParents[i] == parent) {
+        parentRect.set(passParentRects[i]);
+        return;
+      }
+    }
+
+    measureParent(parent);
+    // Keep it for next candidates of the same parent, until the pass ends
+    if (passParentCount == passParents.length) {
+      passParents = Arrays.copyOf(passParents, passParentCount * 2);
+      Rect[] rects = newRects(passParentCount, passParentCount * 2);
+      System.arraycopy(passParentRects, 0, rects, 0, passParentCount);
+      passParentRects = rects;
+    }
+    passParents[passParentCount] = parent;
+    passParentRects[passParentCount].set(parentRect);
+    passParentCount++;
+  }
+
+  private static void measureWindow(@Nullable ViewParent parent) {
+    windowRect.setEmpty();
+    if (parent instanceof View) {
+      // 1. Get Window's vision from parent. This goes through Window session, do it once per pass.
+      ((View) parent).getWindowVisibleDisplayFrame(windowRect);
+    }
+  }
+
+  private static void measureParent(@Nullable ViewParent parent) {
+    parentRect.setEmpty();
+    if (parent instanceof View) {
+      // 2. Get parent's global rect
+      ((View) parent).getGlobalVisibleRect(parentRect, null);
+    }
+  }
+
+  // Array of the given length, with new Rects from index start on
+  private static Rect[] newRects(int start, int length) {
+    Rect[] rects = new Rect[length];
+    for (int i = start; i < length; i++) {
+      rects[i] = new Rect();
+    }
+    return rects;
+  }
+
+  /**
+   * See {@link Toro.Strategies}. Condition: Window contains parent, and parent contains Video or
+   * parent intersects Video.
+   */
+  static boolean allowsToPlay(@NonNull ToroPlayer player, @Nullable ViewParent parent) {
+    final ElectionMetrics metrics = passMetrics;
+    final long start = metrics != null ? System.nanoTime() : 0;
+    final boolean result = provider.allowsToPlay(player, parent);
+    if (metrics != null) {
+      metrics.getAllowsToPlayTime().record(System.nanoTime() - start);
+    }
+    return result;
+  }
+
+  private static boolean doAllowsToPlay(@NonNull ToroPlayer player, @Nullable ViewParent parent) {
+    ensureParent(parent);
+    // 3. Get player global rect
+    View videoView = player.getPlayerView();
+    videoView.getLocationOnScreen(screenLocation);
+    videoRect.set(screenLocation[0], screenLocation[1],  //
+        screenLocation[0] + videoView.getWidth(), screenLocation[1] + videoView.getHeight());
+
+    // Rect#intersect() would modify the cached parent rect, Rect#intersects() doesn't.
+    return windowRect.contains(parentRect) && (parentRect.contains(videoRect)
+        || Rect.intersects(parentRect, videoRect));
+  }
+
+  /**
+   * See {@link ToroUtil#visibleAreaOffset(ToroPlayer, ViewParent)}
+   */
+  static float visibleAreaOffset(@NonNull ToroPlayer player, @Nullable ViewParent parent) {
+    final ElectionMetrics metrics = passMetrics;
+    final long start = metrics != null ? System.nanoTime() : 0;
+    final float result = provider.visibleAreaOffset(player, parent);
+    if (metrics != null) {
+      metrics.getVisibleAreaOffsetTime().record(System.nanoTime() - start);
+    }
+    return result;
+  }
+
+  private static float doVisibleAreaOffset(@NonNull ToroPlayer player,
+      @Nullable ViewParent parent) {
+    View videoView = player.getPlayerView();
+    ensureParent(parent);
+    videoView.getGlobalVisibleRect(videoRect, null);
+    // Parent rect is empty if parent is not a View, so the Video is not visible.
+    if (parentRect.contains(videoRect) || Rect.intersects(parentRect, videoRect)) {
+      float visibleArea = videoRect.height() * videoRect.width();
+      float viewArea = videoView.getWidth() * videoView.getHeight();
+      return viewArea <= 0.f ? 1.f : visibleArea / viewArea;
+    } else {
+      return 0.f;
+    }
+  }
+
+  static void findVisiblePlayers(@NonNull RecyclerView parent,
+      @NonNull ToroScrollListener listener, @NonNull List<ToroPlayer> out) {
+    provider.findVisiblePlayers(parent, listener, out);
+  }
+
+  static void getVisibleRect(@NonNull ToroPlayer player, @NonNull Rect out) {
+    provider.getVisibleRect(player, out);
+  }
+
+  /**
+   * @return distance in pixels from player's View to the visible area of its parent: 0 if they
+   * intersect, {@link Integer#MAX_VALUE} if the parent is not visible at all.
+   */
+  static int distanceToViewport(@NonNull ToroPlayer player, @Nullable ViewParent parent) {
+    if (!(parent instanceof View) || !((View) parent).getGlobalVisibleRect(viewportRect, null)) {
+      return Integer.MAX_VALUE;
+    }
+
+    View videoView = player.getPlayerView();
+    videoView.getLocationOnScreen(screenLocation);
+    int left = screenLocation[0];
+    int top = screenLocation[1];
+    int dx = Math.max(0, Math.max(viewportRect.left - (left + videoView.getWidth()),
+        left - viewportRect.right));
+    int dy = Math.max(0, Math.max(viewportRect.top - (top + videoView.getHeight()),
+        top - viewportRect.bottom));
+    return dx + dy;
+  }
+}
@@ -16,6 +16,8 @@
 
 package im.ene.lab.toro;
 
+import android.support.annotation.NonNull;
+import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.StaggeredGridLayoutManager;
@@ -42,4 +44,26 @@ public interface ToroLayoutManager {
    * StaggeredGridLayoutManager#findLastVisibleItemPositions(int[])}
    */
   int getLastVisibleItemPosition();
+
+  /**
+   * Optional bulk query for a custom {@link RecyclerView.LayoutManager}: which children actually
+   * intersect the viewport, in one pass. Toro elects among these children only. Layout Managers
+   * without it are scanned child by child against the parent's bounds, which is what Toro does
+   * for {@link LinearLayoutManager}, {@link GridLayoutManager} and {@link
+   * StaggeredGridLayoutManager}.
+   */
+  interface VisibleChildren {
+
+    /**
+     * Fill the buffer with visible children: index of the i-th one for {@link
+     * RecyclerView.LayoutManager#getChildAt(int)} in {@code indices[i]}. Called on main thread,
+     * must not allocate.
+     *
+     * @param parent the RecyclerView this Layout Manager is attached to
+     * @param indices buffer of child indices
+     * @return number of visible children. If larger than the buffer's length, only that many are
+     * filled, and Toro queries again with a larger buffer.
+     */
+    int findVisibleChildren(@NonNull RecyclerView parent, @NonNull int[] indices);
+  }
 }
@@ -195,5 +195,19 @@ public interface ToroPlayer {
    */
   boolean onPlaybackError(Cineer mp, PlaybackException error);
 
+  /**
+   * Optional query for a {@link ToroPlayer}: whether it holds a prepared player right now. Toro
+   * caps the number of prepared players (see {@link Toro#setMaxPreparedPlayers(int)}) and asks
+   * this on each scheduling pass, so players which release or prepare on their own are accounted
+   * for. Players without it are assumed to be in the state Toro last asked them.
+   */
+  interface PreparedPlayer {
 
+    /**
+     * Called on main thread.
+     *
+     * @return true if this player holds a prepared, or preparing, player
+     */
+    boolean hasPreparedPlayer();
+  }
 }
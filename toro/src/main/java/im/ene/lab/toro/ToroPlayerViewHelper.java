@@ -40,7 +40,7 @@ public final class ToroPlayerViewHelper extends PlayerViewHelper {
   @Override public boolean onItemLongClick(@NonNull ToroPlayer player, @NonNull View itemView,
       @Nullable ViewParent parent) {
     ToroScrollListener listener =
-        parent != null ? Toro.sInstance.mListeners.get(parent.hashCode()) : null;
+        parent != null ? Toro.sInstance.mListeners.get(parent) : null;
     // Important components are missing, return
     if (listener == null) {
       return false;
@@ -61,8 +61,8 @@ public final class ToroPlayerViewHelper extends PlayerViewHelper {
       // Not the current player, and new player wants to play, so switch players
       if (currentPlayer != null) {
         if (currentPlayer.isPlaying()) {
-          manager.saveVideoState(currentPlayer.getMediaId(), currentPlayer.getCurrentPosition(),
-              currentPlayer.getDuration());
+          VideoPlayerManagerImpl.saveState(manager, currentPlayer.getMediaId(),
+              currentPlayer.getCurrentPosition(), currentPlayer.getDuration());
         }
         // Force pause
         manager.pausePlayback();
@@ -76,8 +76,8 @@ public final class ToroPlayerViewHelper extends PlayerViewHelper {
     } else {
       // Pressing current player, pause it if it is playing
       if (currentPlayer.isPlaying()) {
-        manager.saveVideoState(currentPlayer.getMediaId(), currentPlayer.getCurrentPosition(),
-            currentPlayer.getDuration());
+        VideoPlayerManagerImpl.saveState(manager, currentPlayer.getMediaId(),
+            currentPlayer.getCurrentPosition(), currentPlayer.getDuration());
         manager.pausePlayback();
       } else {
         // It's paused, so we resume it
@@ -16,12 +16,13 @@
 
 package im.ene.lab.toro;
 
+import android.graphics.Rect;
 import android.support.annotation.NonNull;
-import android.support.v7.widget.LinearLayoutManager;
+import android.support.annotation.Nullable;
 import android.support.v7.widget.RecyclerView;
-import android.support.v7.widget.StaggeredGridLayoutManager;
+import android.view.Choreographer;
+import android.view.View;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -29,83 +30,504 @@ import java.util.List;
  *
  * @hide
  */
-final class ToroScrollListener extends RecyclerView.OnScrollListener {
+final class ToroScrollListener extends RecyclerView.OnScrollListener
+    implements Choreographer.FrameCallback {
+
+  // Scroll events further apart than this don't make a velocity sample
+  private static final long MAX_VELOCITY_SAMPLE_NANOS = 100_000_000L;  // 100 ms
+  // Scroll distance is accumulated over at least this long before making a sample: one frame
+  private static final long MIN_VELOCITY_SAMPLE_NANOS = 16_000_000L;  // 16 ms
 
   private final VideoPlayerManager playerManager;
+  // Players whose Views are currently attached to the parent. Kept up to date by
+  // PlayerViewHelper#onAttachedToParent() and PlayerViewHelper#onDetachedFromParent()
+  private final List<ToroPlayer> players;
   private final List<ToroPlayer> candidates;
+  // Candidates' geometry and state, measured once per pass
+  private final ElectionSnapshot snapshot;
+  private final Rect visibleRect;
+  // Registered players visible in the parent, in layout order. Filled once per pass.
+  private final List<ToroPlayer> visiblePlayers;
+
+  // Continuous election: the View being scrolled, and whether a frame callback is posted for it
+  private RecyclerView scrollingParent;
+  private boolean framePending = false;
+  private long lastPassNanos = 0;
+  // Created once metrics are enabled
+  private ElectionMetrics metrics;
+
+  // Nested lists: registered Views whose nearest registered ancestor is this listener's View.
+  // Copied by each pass, they nominate their best player and compete with this View's candidates.
+  // Only the list owning the winner plays.
+  private final List<RecyclerView> nestedLists;
+  // Nesting relations, cached by Toro on register and as registered Views attach and detach: the
+  // nearest registered ancestor of this listener's View (or null), and the registered Views it is
+  // the nearest registered ancestor of.
+  RecyclerView nestingParent;
+  final List<RecyclerView> nestedChildren = new ArrayList<>();
+  // Result of latest nomination: best player of this View and its nested lists, and whether it is
+  // one of this View's own players. Valid during a pass.
+  private ToroPlayer nominee;
+  private boolean ownNominee;
+  // Election requested out of scrolling, eg. by a nested list's attached player
+  private boolean electionRequested = false;
+
+  // Set by Toro#suspend(), eg. when the View's ViewPager page goes off screen: no election, no
+  // prepare until Toro#resume()
+  private boolean suspended = false;
+
+  // Installed by Toro#register() as an OnItemTouchListener of the View
+  private FlingPredictor flingPredictor;
+
+  // Velocity gate: attach-time prepares are deferred while scrolling faster than the threshold
+  private final List<ToroPlayer> deferred;
+  private float velocity = 0.f;  // pixels per second, smoothed
+  private long lastScrolledNanos = 0;
+  // Current sample window, restarted when lastScrolledNanos is reset
+  private long sampleStartNanos = 0;
+  private int sampleDistance = 0;
+  private boolean scrollingFast = false;
+  private int deferredPrepareCount = 0;
+  private int avoidedPrepareCount = 0;
 
   ToroScrollListener(@NonNull VideoPlayerManager manager) {
     this.playerManager = manager;
+    this.players = new ArrayList<>();
     this.candidates = new ArrayList<>();
+    this.deferred = new ArrayList<>();
+    this.nestedLists = new ArrayList<>();
+    this.visiblePlayers = new ArrayList<>();
+    this.snapshot = new ElectionSnapshot();
+    this.visibleRect = new Rect();
   }
 
   @NonNull final VideoPlayerManager getManager() {
     return playerManager;
   }
 
+  /**
+   * @return players currently attached to the parent. Must not be modified.
+   */
+  @NonNull List<ToroPlayer> getPlayers() {
+    return players;
+  }
+
+  /**
+   * @return attached player of the media, or null if there is none
+   */
+  @Nullable ToroPlayer findPlayer(@NonNull String mediaId) {
+    for (int i = 0, size = players.size(); i < size; i++) {
+      if (mediaId.equals(players.get(i).getMediaId())) {
+        return players.get(i);
+      }
+    }
+    return null;
+  }
+
+  boolean isSuspended() {
+    return suspended;
+  }
+
+  void setSuspended(boolean suspended) {
+    this.suspended = suspended;
+    if (suspended) {
+      cancelPendingFrame();
+      if (flingPredictor != null) {
+        flingPredictor.cancel();
+      }
+      deferred.clear();
+      velocity = 0.f;
+      lastScrolledNanos = 0;
+      scrollingFast = false;
+    }
+  }
+
+  @Nullable FlingPredictor getFlingPredictor() {
+    return flingPredictor;
+  }
+
+  void setFlingPredictor(@Nullable FlingPredictor flingPredictor) {
+    this.flingPredictor = flingPredictor;
+  }
+
+  /**
+   * Called once after registering, to collect the players attached before this listener exists.
+   * From then on, the registry is maintained by attach/detach callbacks.
+   */
+  void collectPlayers(@NonNull RecyclerView parent) {
+    clearPlayers();
+    for (int i = 0, count = parent.getChildCount(); i < count; i++) {
+      View child = parent.getChildAt(i);
+      RecyclerView.ViewHolder viewHolder = parent.getChildViewHolder(child);
+      if (viewHolder instanceof ToroPlayer) {
+        onPlayerAttached((ToroPlayer) viewHolder);
+      }
+    }
+  }
+
+  void onPlayerAttached(@NonNull ToroPlayer player) {
+    if (!players.contains(player)) {
+      players.add(player);
+    }
+    Toro.sInstance.mPlayers.put(player, this);
+    if (flingPredictor != null && !suspended) {
+      flingPredictor.onPlayerAttached();
+    }
+  }
+
+  void onPlayerDetached(@NonNull ToroPlayer player) {
+    players.remove(player);
+    if (deferred.remove(player)) {
+      // Attached and detached while scrolling fast, never prepared.
+      avoidedPrepareCount++;
+    }
+    if (Toro.sInstance.mPlayers.get(player) == this) {
+      Toro.sInstance.mPlayers.remove(player);
+    }
+  }
+
+  void clearPlayers() {
+    for (int i = 0, size = players.size(); i < size; i++) {
+      if (Toro.sInstance.mPlayers.get(players.get(i)) == this) {
+        Toro.sInstance.mPlayers.remove(players.get(i));
+      }
+      Toro.sInstance.mScheduler.remove(players.get(i));
+    }
+    players.clear();
+    deferred.clear();
+  }
+
+  /**
+   * @return true if attach-time prepares should be deferred, because the parent is scrolling
+   * faster than {@link Toro#getPrepareVelocityThreshold()}
+   */
+  boolean shouldDeferPrepare() {
+    return scrollingFast;
+  }
+
+  /**
+   * Defer the prepare of an attached player, until scrolling slows down. If the player is detached
+   * before that, its prepare is avoided.
+   */
+  void deferPrepare(@NonNull ToroPlayer player) {
+    if (!deferred.contains(player)) {
+      deferred.add(player);
+      deferredPrepareCount++;
+    }
+  }
+
+  private void flushDeferred(RecyclerView parent) {
+    for (int i = 0, size = deferred.size(); i < size; i++) {
+      Toro.sInstance.mScheduler.request(deferred.get(i), parent);
+    }
+    deferred.clear();
+  }
+
+  int getDeferredPrepareCount() {
+    return deferredPrepareCount;
+  }
+
+  int getAvoidedPrepareCount() {
+    return avoidedPrepareCount;
+  }
+
+  /**
+   * @return metrics of this listener, or null if metrics were never enabled
+   */
+  @Nullable ElectionMetrics getMetrics() {
+    return metrics;
+  }
+
+  // Metrics to record into, null if disabled
+  @Nullable private ElectionMetrics activeMetrics() {
+    if (!Toro.isMetricsEnabled()) {
+      return null;
+    }
+
+    if (metrics == null) {
+      metrics = new ElectionMetrics();
+    }
+    return metrics;
+  }
+
+  /**
+   * @return wall time of latest election pass, in nanoseconds
+   */
+  long getLastPassNanos() {
+    return lastPassNanos;
+  }
+
   @Override public void onScrollStateChanged(RecyclerView parent, int newState) {
-    if (newState != RecyclerView.SCROLL_STATE_IDLE) {
+    if (flingPredictor != null) {
+      flingPredictor.onScrollStateChanged(newState);
+    }
+
+    if (newState != RecyclerView.SCROLL_STATE_IDLE || suspended) {
       return;
     }
 
+    final ElectionMetrics metrics = activeMetrics();
+    final long startNanos = metrics != null ? System.nanoTime() : 0;
+
+    velocity = 0.f;
+    lastScrolledNanos = 0;
+    scrollingFast = false;
+    flushDeferred(parent);
+
+    cancelPendingFrame();
+    elect(parent);
+    // Elected player and distances to viewport may have changed
+    Toro.sInstance.mScheduler.schedule();
+
+    if (metrics != null) {
+      metrics.getScrollIdleTime().record(System.nanoTime() - startNanos);
+    }
+  }
+
+  @Override public void onScrolled(RecyclerView parent, int dx, int dy) {
+    if (flingPredictor != null && !suspended) {
+      flingPredictor.onScrolled(dx, dy);
+    }
+
+    if ((dx == 0 && dy == 0) || suspended) {
+      return;
+    }
+
+    updateVelocity(parent, dx, dy);
+    if (!Toro.isElectWhileScrolling()) {
+      return;
+    }
+
+    // Many onScrolled calls may happen in one frame, throttle them to one election pass
+    scrollingParent = parent;
+    if (!framePending) {
+      framePending = true;
+      Choreographer.getInstance().postFrameCallback(this);
+    }
+  }
+
+  private void updateVelocity(RecyclerView parent, int dx, int dy) {
+    final long now = System.nanoTime();
+    if (lastScrolledNanos == 0 || now - lastScrolledNanos > MAX_VELOCITY_SAMPLE_NANOS) {
+      // First scroll, or the scroll paused for a while: start over. The time this scroll took is
+      // unknown, so its distance doesn't count.
+      velocity = 0.f;
+      sampleStartNanos = now;
+      sampleDistance = 0;
+    } else {
+      // Several onScrolled calls in one frame are accumulated: a sample spans one frame at least
+      sampleDistance += Math.abs(dx) + Math.abs(dy);
+      final long elapsed = now - sampleStartNanos;
+      if (elapsed >= MIN_VELOCITY_SAMPLE_NANOS) {
+        float sample = sampleDistance * 1e9f / elapsed;
+        velocity = velocity == 0.f ? sample : (velocity + sample) / 2.f;
+        sampleStartNanos = now;
+        sampleDistance = 0;
+      }
+    }
+    lastScrolledNanos = now;
+
+    final float threshold = Toro.getPrepareVelocityThreshold();
+    final boolean wasScrollingFast = scrollingFast;
+    scrollingFast = threshold > 0.f
+        && velocity > threshold * parent.getResources().getDisplayMetrics().density;
+    if (wasScrollingFast && !scrollingFast) {
+      flushDeferred(parent);
+    }
+  }
+
+  @Override public void doFrame(long frameTimeNanos) {
+    framePending = false;
+    final RecyclerView parent = scrollingParent;
+    final boolean requested = electionRequested;
+    scrollingParent = null;
+    electionRequested = false;
+    // Idle state has its own election pass.
+    if (parent != null && !suspended
+        && (requested || parent.getScrollState() != RecyclerView.SCROLL_STATE_IDLE)) {
+      elect(parent);
+    }
+  }
+
+  /**
+   * Elect on next frame, even if the View is idle. Multiple calls are coalesced. Ignored while the
+   * outermost list is scrolling, it elects once idle.
+   */
+  void requestElection(@NonNull RecyclerView parent) {
+    if (suspended
+        || Toro.findRootList(parent).getScrollState() != RecyclerView.SCROLL_STATE_IDLE) {
+      return;
+    }
+
+    scrollingParent = parent;
+    electionRequested = true;
+    if (!framePending) {
+      framePending = true;
+      Choreographer.getInstance().postFrameCallback(this);
+    }
+  }
+
+  void cancelPendingFrame() {
+    if (framePending) {
+      Choreographer.getInstance().removeFrameCallback(this);
+      framePending = false;
+    }
+    scrollingParent = null;
+    electionRequested = false;
+  }
+
+  /**
+   * Run one election pass over visible players. Cost is one Layout Manager pass plus the visible
+   * players, so it is safe to be called once per frame while scrolling: current player is paused
+   * as soon as it stops qualifying, and the winner starts as soon as it qualifies.
+   *
+   * A nested list doesn't elect by itself: its outermost registered ancestor elects for the whole
+   * tree of lists.
+   */
+  private void elect(RecyclerView parent) {
+    final RecyclerView root = Toro.findRootList(parent);
+    if (root != parent) {
+      ToroScrollListener rootListener = Toro.sInstance.mListeners.get(root);
+      if (rootListener != null && !rootListener.isSuspended()) {
+        rootListener.elect(root);
+      }
+      return;
+    }
+
+    final ElectionMetrics metrics = activeMetrics();
+    final long startNanos = System.nanoTime();
+    // Window frame and parent rect are the same for every candidate, measure them once
+    ToroGeometry.beginPass(parent, metrics);
+    try {
+      ToroPlayer elected = nominate(parent, metrics);
+      apply(parent, elected, false, metrics);
+    } finally {
+      ToroGeometry.endPass();
+      lastPassNanos = System.nanoTime() - startNanos;
+      if (metrics != null) {
+        metrics.getPassTime().record(lastPassNanos);
+      }
+    }
+  }
+
+  /**
+   * Find the best player of this View and its nested lists, without changing playback.
+   */
+  @Nullable private ToroPlayer nominate(RecyclerView parent, @Nullable ElectionMetrics metrics) {
     // clear current playback candidates
     candidates.clear();
+    final ToroSnapshotStrategy strategy = Toro.getElectionStrategy();
     // Check current playing position
     final ToroPlayer currentPlayer = playerManager.getPlayer();
     if (currentPlayer != null && currentPlayer.getPlayOrder() != RecyclerView.NO_POSITION) {
-      if (currentPlayer.wantsToPlay() && Toro.getStrategy().allowsToPlay(currentPlayer, parent)) {
+      if (currentPlayer.wantsToPlay() && strategy.allowsToPlay(currentPlayer, parent)) {
         candidates.add(currentPlayer);
       }
     }
 
+    // Re-score visible players only, as told by the Layout Manager in one pass. Candidates after
+    // current player are kept in play order, the same order a top-down scan through visible
+    // positions would produce.
+    ToroGeometry.findVisiblePlayers(parent, this, visiblePlayers);
+    final int head = candidates.size();
     ToroPlayer candidate;
-    int firstPosition = RecyclerView.NO_POSITION;
-    int lastPosition = RecyclerView.NO_POSITION;
-
-    // Find visible positions range
-    if (parent.getLayoutManager() instanceof LinearLayoutManager) {
-      LinearLayoutManager layoutManager = (LinearLayoutManager) parent.getLayoutManager();
-      firstPosition = layoutManager.findFirstVisibleItemPosition();
-      lastPosition = layoutManager.findLastVisibleItemPosition();
-    } else if (parent.getLayoutManager() instanceof StaggeredGridLayoutManager) {
-      StaggeredGridLayoutManager layoutManager =
-          (StaggeredGridLayoutManager) parent.getLayoutManager();
-
-      // StaggeredGridLayoutManager can have many rows ...
-      int[] firstVisibleItemPositions = layoutManager.findFirstVisibleItemPositions(null);
-      int[] lastVisibleItemPositions = layoutManager.findLastVisibleItemPositions(null);
-
-      List<Integer> firstVisiblePositions = ToroUtil.asList(firstVisibleItemPositions);
-      List<Integer> lastVisiblePositions = ToroUtil.asList(lastVisibleItemPositions);
-
-      firstPosition = Collections.min(firstVisiblePositions);
-      lastPosition = Collections.max(lastVisiblePositions);
-    } else if (parent.getLayoutManager() instanceof ToroLayoutManager) {
-      ToroLayoutManager layoutManager = (ToroLayoutManager) parent.getLayoutManager();
-      firstPosition = layoutManager.getFirstVisibleItemPosition();
-      lastPosition = layoutManager.getLastVisibleItemPosition();
-    }
-
-    if (firstPosition <= lastPosition /* don't screw up the 'for' loop */ &&  //
-        (firstPosition != RecyclerView.NO_POSITION || lastPosition != RecyclerView.NO_POSITION)) {
-      for (int i = firstPosition; i <= lastPosition; i++) {
-        // Detected a view holder for video player
-        RecyclerView.ViewHolder viewHolder = parent.findViewHolderForAdapterPosition(i);
-        if (viewHolder != null && viewHolder instanceof ToroPlayer) {
-          candidate = (ToroPlayer) viewHolder;
-          // check candidate's view position
-          if (candidate.wantsToPlay() && Toro.getStrategy().allowsToPlay(candidate, parent)) {
-            // Have a new candidate who can play
-            if (!candidates.contains(candidate)) {
-              candidates.add(candidate);
-            }
-          }
+    for (int i = 0, size = visiblePlayers.size(); i < size; i++) {
+      candidate = visiblePlayers.get(i);
+      if (candidate == currentPlayer || candidate.getPlayOrder() == RecyclerView.NO_POSITION) {
+        continue;
+      }
+
+      // check candidate's view position
+      if (candidate.wantsToPlay() && strategy.allowsToPlay(candidate, parent)) {
+        // Have a new candidate who can play
+        final int order = candidate.getPlayOrder();
+        int index = candidates.size();
+        while (index > head && candidates.get(index - 1).getPlayOrder() > order) {
+          index--;
         }
+        candidates.add(index, candidate);
+      }
+    }
+    visiblePlayers.clear();
+
+    // Nested lists nominate their best player, it competes with this View's candidates
+    final int ownCount = candidates.size();
+    Toro.findNestedLists(parent, nestedLists);
+    for (int i = 0; i < nestedLists.size(); i++) {
+      RecyclerView nestedList = nestedLists.get(i);
+      ToroScrollListener nested = Toro.sInstance.mListeners.get(nestedList);
+      if (nested == null || nested.isSuspended()) {
+        nestedLists.remove(i--);
+        continue;
+      }
+
+      candidate = nested.nominate(nestedList, null);
+      if (candidate != null && strategy.allowsToPlay(candidate, parent)) {
+        candidates.add(candidate);
+      }
+    }
+
+    if (metrics != null) {
+      metrics.getCandidates().record(candidates.size());
+    }
+
+    // Measure candidates once, then ask strategy to elect one
+    final ToroPlayer electedPlayer;
+    try {
+      for (int i = 0, size = candidates.size(); i < size; i++) {
+        candidate = candidates.get(i);
+        ToroGeometry.getVisibleRect(candidate, visibleRect);
+        // A nested nominee is current if its list is the one playing
+        boolean isCurrent = i < ownCount ? candidate == currentPlayer
+            : candidate == nestedPlayerOf(candidate);
+        snapshot.add(candidate, isCurrent, visibleRect);
+      }
+      electedPlayer = strategy.findBestPlayer(snapshot);
+      final int electedIndex = electedPlayer != null ? candidates.indexOf(electedPlayer) : -1;
+      ownNominee = electedIndex >= 0 && electedIndex < ownCount;
+    } finally {
+      snapshot.clear();
+      candidates.clear();
+    }
+
+    nominee = electedPlayer;
+    return electedPlayer;
+  }
+
+  // Current player of the nested list owning this nominee, if any
+  @Nullable private ToroPlayer nestedPlayerOf(ToroPlayer candidate) {
+    for (int i = 0, size = nestedLists.size(); i < size; i++) {
+      ToroScrollListener nested = Toro.sInstance.mListeners.get(nestedLists.get(i));
+      if (nested != null && nested.nominee == candidate) {
+        return nested.getManager().getPlayer();
       }
     }
+    return null;
+  }
+
+  /**
+   * Play the elected player if it belongs to this View, or hand it down to the nested list which
+   * nominated it. Lists which don't own it pause their current player.
+   *
+   * @param elected winner of the whole tree of lists, or null
+   * @param isNested true if this View is nested in another registered View
+   */
+  private void apply(RecyclerView parent, @Nullable ToroPlayer elected, boolean isNested,
+      @Nullable ElectionMetrics metrics) {
+    for (int i = 0, size = nestedLists.size(); i < size; i++) {
+      RecyclerView nestedList = nestedLists.get(i);
+      ToroScrollListener nested = Toro.sInstance.mListeners.get(nestedList);
+      if (nested != null) {
+        nested.apply(nestedList, elected != null && nested.nominee == elected ? elected : null,
+            true, null);
+      }
+    }
+    nestedLists.clear();
 
-    // Ask strategy to elect one
-    final ToroPlayer electedPlayer = Toro.getStrategy().findBestPlayer(candidates);
+    final ToroPlayer electedPlayer = ownNominee && elected == nominee ? elected : null;
+    nominee = null;
+    ownNominee = false;
+    final ToroPlayer currentPlayer = playerManager.getPlayer();
 
     if (electedPlayer == currentPlayer) {
       // No thing changes, no new President.
@@ -116,20 +538,30 @@ final class ToroScrollListener extends RecyclerView.OnScrollListener {
       return;
     }
 
+    if (metrics != null) {
+      metrics.onPlayerSwitched();
+    }
+
     // Current player is not elected anymore, pause it.
     if (currentPlayer != null) {
-      playerManager.saveVideoState(currentPlayer.getMediaId(), currentPlayer.getCurrentPosition(),
-          currentPlayer.getDuration());
+      VideoPlayerManagerImpl.saveState(playerManager, currentPlayer.getMediaId(),
+          currentPlayer.getCurrentPosition(), currentPlayer.getDuration());
       playerManager.pausePlayback();
     }
 
     if (electedPlayer == null) {
+      if (isNested && currentPlayer != null) {
+        // Another list plays. Give up this one, so the scheduler may release it when needed.
+        playerManager.setPlayer(null);
+        Toro.sInstance.mScheduler.request(currentPlayer, parent);
+      }
       // Old president resigned, there is no new one, we are screwed up, get out of here.
       return;
     }
 
     // Well... let's the BlackHouse starts new cycle with the new President!
     playerManager.setPlayer(electedPlayer);
+    Toro.sInstance.mPlaybackMetrics.onElected(electedPlayer, System.nanoTime());
     playerManager.restoreVideoState(electedPlayer.getMediaId());
     playerManager.startPlayback();
   }
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * A {@link ToroStrategy} which elects from an {@link ElectionSnapshot}: visibility and playback
+ * state of every candidate are measured once per pass, so a Strategy can pick the winner in one
+ * linear scan, without sorting and without measuring Views again.
+ *
+ * Toro uses {@link #findBestPlayer(ElectionSnapshot)} if current Strategy implements this
+ * interface. Other Strategies are adapted, and still receive a candidate list.
+ */
+public interface ToroSnapshotStrategy extends ToroStrategy {
+
+  /**
+   * Each candidate in snapshot returns true for {@link ToroPlayer#wantsToPlay()} and is allowed
+   * by {@link #allowsToPlay(ToroPlayer, android.view.ViewParent)}. A Strategy gives the best fit
+   * Player to start playing.
+   *
+   * While a list flings, Toro also calls it on a snapshot of the geometry the list will have once
+   * it stops, to prepare the Player it would elect. Candidates of that snapshot are those visible
+   * then, whether they return true for these two methods or not.
+   *
+   * @param snapshot candidates of current election pass, only valid during this call
+   */
+  @Nullable ToroPlayer findBestPlayer(@NonNull ElectionSnapshot snapshot);
+}
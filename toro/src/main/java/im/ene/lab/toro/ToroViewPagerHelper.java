@@ -19,7 +19,14 @@ package im.ene.lab.toro;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.v4.view.ViewPager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewParent;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by eneim on 6/8/16.
@@ -36,6 +43,11 @@ import android.support.v4.view.ViewPager;
  *
  * Gives us a clue that on very first layout pass,
  * {@link ViewPager.OnPageChangeListener#onPageScrolled(int, float, int)} will be triggered.
+ *
+ * Once pages settle, registered Views on the pages in the ViewPager's viewport are resumed and
+ * re-elect, registered Views on off screen pages are suspended: their players are paused and
+ * released. See {@link Toro#suspend(RecyclerView)}. Registered Views outside of the ViewPager are
+ * not affected.
  */
 public class ToroViewPagerHelper extends ViewPager.SimpleOnPageChangeListener
     implements Removable, Handler.Callback {
@@ -44,9 +56,27 @@ public class ToroViewPagerHelper extends ViewPager.SimpleOnPageChangeListener
   private static final int MSG_DELAY = 50;  // Reasonable and relatively short delay
 
   private Handler handler;
+  private ViewPager viewPager;
   boolean firstScroll = true;
 
-  public ToroViewPagerHelper() {
+  // Registered Views on the pager's pages, collected once per settle
+  private final List<RecyclerView> onScreen = new ArrayList<>();
+  private final List<RecyclerView> offScreen = new ArrayList<>();
+
+  /**
+   * @param viewPager the ViewPager this helper is added to as {@link
+   * ViewPager.OnPageChangeListener}
+   */
+  public ToroViewPagerHelper(@NonNull ViewPager viewPager) {
+    this.handler = new Handler(Looper.getMainLooper(), this);
+    this.viewPager = viewPager;
+  }
+
+  /**
+   * @deprecated Without its ViewPager, this helper can't tell pages apart: every registered View
+   * re-elects, by resting Toro then waking it up. Use {@link #ToroViewPagerHelper(ViewPager)}.
+   */
+  @Deprecated public ToroViewPagerHelper() {
     this.handler = new Handler(Looper.getMainLooper(), this);
   }
 
@@ -69,16 +99,75 @@ public class ToroViewPagerHelper extends ViewPager.SimpleOnPageChangeListener
   @Override public void remove() {
     this.handler.removeCallbacksAndMessages(null);
     this.handler = null;
+    this.viewPager = null;
+    this.onScreen.clear();
+    this.offScreen.clear();
   }
 
   @Override public boolean handleMessage(Message msg) {
     if (msg.what == MSG_LAYOUT_STABLE) {
-      // Question: Is this a bad practice?
-      Toro.rest(true);
-      Toro.rest(false);
+      if (viewPager != null) {
+        onPagesSettled(viewPager);
+      } else {
+        Toro.rest(true);
+        Toro.rest(false);
+      }
       return true;
     }
 
     return false;
   }
+
+  private void onPagesSettled(@NonNull ViewPager pager) {
+    // Viewport of the pager, in its scrolled coordinates
+    final int left = pager.getScrollX() + pager.getPaddingLeft();
+    final int right = pager.getScrollX() + pager.getWidth() - pager.getPaddingRight();
+    for (RecyclerView view : Toro.sInstance.mListeners.keySet()) {
+      View page = pageOf(pager, view);
+      if (page == null) {
+        continue;
+      }
+
+      if (page.getRight() > left && page.getLeft() < right) {
+        onScreen.add(view);
+      } else {
+        offScreen.add(view);
+      }
+    }
+
+    try {
+      // Suspend first, so resumed Views get the prepare budget
+      for (int i = 0, size = offScreen.size(); i < size; i++) {
+        Toro.suspend(offScreen.get(i));
+      }
+      for (int i = 0, size = onScreen.size(); i < size; i++) {
+        RecyclerView view = onScreen.get(i);
+        if (Toro.isSuspended(view)) {
+          Toro.resume(view);  // Re-elects
+        } else {
+          Toro.sInstance.mListeners.get(view)
+              .onScrollStateChanged(view, RecyclerView.SCROLL_STATE_IDLE);
+        }
+      }
+    } finally {
+      onScreen.clear();
+      offScreen.clear();
+    }
+  }
+
+  /**
+   * @return the page of this pager holding the View, or null if the View is not in the pager
+   */
+  @Nullable private static View pageOf(@NonNull ViewPager pager, @NonNull View view) {
+    View child = view;
+    ViewParent parent = view.getParent();
+    while (parent instanceof View) {
+      if (parent == pager) {
+        return child;
+      }
+      child = (View) parent;
+      parent = parent.getParent();
+    }
+    return null;
+  }
 }
@@ -16,23 +16,68 @@
 
 package im.ene.lab.toro;
 
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import java.util.HashMap;
-import java.util.Map;
+import android.support.v7.widget.RecyclerView;
 
 /**
  * Created by eneim on 1/31/16.
  *
  * Extension/Implementation of {@link VideoPlayerManager}. Can be used as a delegation.
+ *
+ * Playback positions are kept in a bounded {@link PlaybackPositionStore}, keyed by media ID, or
+ * by the player's stable item ID if {@link #setUseStableIds(boolean)} is enabled.
  */
 public final class VideoPlayerManagerImpl implements VideoPlayerManager {
 
   private static final String TAG = "VideoPlayerManager";
 
-  private final Map<String, Long> mVideoStates = new HashMap<>();
+  private final PlaybackPositionStore mVideoStates;
+  private boolean mUseStableIds = false;
 
   private ToroPlayer mPlayer;
 
+  public VideoPlayerManagerImpl() {
+    this(new PlaybackPositionStore());
+  }
+
+  /**
+   * @param capacity max number of saved positions, least recently used ones are evicted first
+   */
+  public VideoPlayerManagerImpl(int capacity) {
+    this(new PlaybackPositionStore(capacity));
+  }
+
+  /**
+   * @param positionStore store of saved positions, with custom capacity or eviction policy
+   */
+  public VideoPlayerManagerImpl(@NonNull PlaybackPositionStore positionStore) {
+    this.mVideoStates = positionStore;
+  }
+
+  @NonNull public PlaybackPositionStore getPositionStore() {
+    return mVideoStates;
+  }
+
+  /**
+   * Key saved positions of current player by its stable item ID ({@link
+   * RecyclerView.ViewHolder#getItemId()}) instead of its media ID. Requires an Adapter with stable
+   * IDs: players without one, and positions saved for another media ID than current player's,
+   * are still keyed by media ID.
+   */
+  public void setUseStableIds(boolean useStableIds) {
+    this.mUseStableIds = useStableIds;
+  }
+
+  // Stable ID of current player, if it is the one of this media ID
+  private long stableIdOf(String videoId) {
+    if (mUseStableIds && mPlayer instanceof RecyclerView.ViewHolder && videoId.equals(
+        mPlayer.getMediaId())) {
+      return ((RecyclerView.ViewHolder) mPlayer).getItemId();
+    }
+    return RecyclerView.NO_ID;
+  }
+
   @Override public final ToroPlayer getPlayer() {
     return mPlayer;
   }
@@ -60,21 +105,61 @@ public final class VideoPlayerManagerImpl implements VideoPlayerManager {
   }
 
   @Override public void saveVideoState(String videoId, @Nullable Long position, long duration) {
-    if (videoId != null) {
-      mVideoStates.put(videoId, position == null ? Long.valueOf(0) : position);
+    savePosition(videoId, position == null ? 0 : position, duration);
+  }
+
+  /**
+   * Same as {@link #saveVideoState(String, Long, long)}, without boxing.
+   */
+  public void savePosition(String videoId, long position, long duration) {
+    if (videoId == null) {
+      return;
+    }
+
+    long stableId = stableIdOf(videoId);
+    if (stableId != RecyclerView.NO_ID) {
+      mVideoStates.put(stableId, position, duration);
+    } else {
+      mVideoStates.put(videoId, position, duration);
     }
   }
 
+  /**
+   * Save a position through any manager, without boxing if it is a {@link VideoPlayerManagerImpl}.
+   * Toro saves positions through this.
+   */
+  static void saveState(@NonNull VideoPlayerManager manager, String videoId, long position,
+      long duration) {
+    if (manager instanceof VideoPlayerManagerImpl) {
+      ((VideoPlayerManagerImpl) manager).savePosition(videoId, position, duration);
+    } else {
+      manager.saveVideoState(videoId, position, duration);
+    }
+  }
+
+  /**
+   * Same as {@link #getSavedPosition(String)}, without boxing.
+   *
+   * @return saved position, or defaultValue if there is none
+   */
+  public long getSavedPosition(String videoId, long defaultValue) {
+    if (videoId == null) {
+      return defaultValue;
+    }
+
+    long stableId = stableIdOf(videoId);
+    if (stableId != RecyclerView.NO_ID && mVideoStates.contains(stableId)) {
+      return mVideoStates.get(stableId, defaultValue);
+    }
+    return mVideoStates.get(videoId, defaultValue);
+  }
+
   @Override public void restoreVideoState(String videoId) {
     if (mPlayer == null) {
       return;
     }
 
-    Long position = mVideoStates.get(videoId);
-    if (position == null) {
-      position = 0L;
-    }
-
+    long position = getSavedPosition(videoId, 0);
     try {
       mPlayer.seekTo(position);
     } catch (IllegalStateException er) {
@@ -83,7 +168,11 @@ public final class VideoPlayerManagerImpl implements VideoPlayerManager {
   }
 
   @Nullable @Override public Long getSavedPosition(String videoId) {
-    return mVideoStates.get(videoId);
+    long stableId = videoId != null ? stableIdOf(videoId) : RecyclerView.NO_ID;
+    if (stableId != RecyclerView.NO_ID && mVideoStates.contains(stableId)) {
+      return mVideoStates.get(stableId, 0);
+    }
+    return videoId != null && mVideoStates.contains(videoId) ? mVideoStates.get(videoId, 0) : null;
   }
 
   @Override public void onRegistered() {
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+/**
+ * Built-in {@link ToroLayoutManager.VisibleChildren} for Layout Managers which don't implement
+ * it. Children are measured against the parent's viewport in one pass: no per-span position
+ * arrays, no position to child lookups.
+ *
+ * @hide
+ */
+final class VisibleChildrenQueries {
+
+  private VisibleChildrenQueries() {
+    throw new AssertionError("Not supported");
+  }
+
+  /**
+   * Children of a {@link LinearLayoutManager}, so of a {@link
+   * android.support.v7.widget.GridLayoutManager} as well, are ordered along the scroll axis: the
+   * scan stops at the first invisible child after a visible one.
+   */
+  static final ToroLayoutManager.VisibleChildren LINEAR = new ViewportScan(true);
+
+  /**
+   * Any other Layout Manager, eg. {@link android.support.v7.widget.StaggeredGridLayoutManager}
+   * whose spans fill unevenly: every child is measured.
+   */
+  static final ToroLayoutManager.VisibleChildren ANY = new ViewportScan(false);
+
+  /**
+   * @return the query for this Layout Manager, or null if there is none
+   */
+  @Nullable static ToroLayoutManager.VisibleChildren of(
+      @Nullable RecyclerView.LayoutManager layoutManager) {
+    if (layoutManager == null) {
+      return null;
+    }
+
+    if (layoutManager instanceof ToroLayoutManager.VisibleChildren) {
+      return (ToroLayoutManager.VisibleChildren) layoutManager;
+    }
+
+    return layoutManager instanceof LinearLayoutManager ? LINEAR : ANY;
+  }
+
+  /**
+   * @return true if part of the child's area is inside the viewport
+   */
+  static boolean isVisible(@NonNull View child, int left, int top, int right, int bottom) {
+    final int width = child.getWidth();
+    final int height = child.getHeight();
+    if (width <= 0 || height <= 0) {
+      return false;
+    }
+
+    final int childLeft = child.getLeft() + (int) child.getTranslationX();
+    final int childTop = child.getTop() + (int) child.getTranslationY();
+    return Math.min(childLeft + width, right) > Math.max(childLeft, left)
+        && Math.min(childTop + height, bottom) > Math.max(childTop, top);
+  }
+
+  private static final class ViewportScan implements ToroLayoutManager.VisibleChildren {
+
+    private final boolean ordered;
+
+    ViewportScan(boolean ordered) {
+      this.ordered = ordered;
+    }
+
+    @Override public int findVisibleChildren(@NonNull RecyclerView parent, @NonNull int[] indices) {
+      final RecyclerView.LayoutManager layoutManager = parent.getLayoutManager();
+      if (layoutManager == null) {
+        return 0;
+      }
+
+      final boolean clipToPadding = layoutManager.getClipToPadding();
+      final int left = clipToPadding ? parent.getPaddingLeft() : 0;
+      final int top = clipToPadding ? parent.getPaddingTop() : 0;
+      final int right = parent.getWidth() - (clipToPadding ? parent.getPaddingRight() : 0);
+      final int bottom = parent.getHeight() - (clipToPadding ? parent.getPaddingBottom() : 0);
+
+      int count = 0;
+      for (int i = 0, childCount = layoutManager.getChildCount(); i < childCount; i++) {
+        View child = layoutManager.getChildAt(i);
+        if (child != null && isVisible(child, left, top, right, bottom)) {
+          if (count < indices.length) {
+            indices[count] = i;
+          }
+          count++;
+        } else if (ordered && count > 0 && child != null && child.getHeight() > 0
+            && child.getWidth() > 0) {
+          // Past the viewport. Empty children don't tell.
+          break;
+        }
+      }
+      return count;
+    }
+  }
+}
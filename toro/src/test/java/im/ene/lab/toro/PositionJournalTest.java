@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016 eneim@Eneim Labs, nam@ene.im
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.ene.lab.toro;
+
+import android.content.Context;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link PositionJournal} against its file. Robolectric runs tasks posted to the journal thread
+ * right away, so {@link PositionJournal#close()} has written and closed the file when it returns.
+ */
+@RunWith(RobolectricTestRunner.class) @Config(manifest = Config.NONE, sdk = 23)
+public class PositionJournalTest {
+
+  private static final String NAME = "test";
+
+  // Journal layout: 8 bytes header, then a PUT_MEDIA_ID record of a one char media ID is 20 bytes
+  private static final int HEADER_SIZE = 8;
+  private static final int SHORT_MEDIA_ID_RECORD_SIZE = 20;
+  private static final byte PUT_KEY = 2;
+
+  private Context context;
+  private File file;
+
+  @Before public void setUp() {
+    context = RuntimeEnvironment.application;
+    file = new File(new File(context.getFilesDir(), "toro"), NAME + ".journal");
+    if (file.exists()) {
+      assertTrue(file.delete());
+    }
+  }
+
+  @Test public void reopenAfterClose() throws IOException {
+    PositionJournal journal = PositionJournal.open(context, NAME, 8);
+    journal.getStore().put("a", 100, 1000);
+    journal.close();
+    // Not persisted anymore
+    journal.getStore().put("x", 100, 1000);
+
+    journal = PositionJournal.open(context, NAME, 8);
+    PlaybackPositionStore store = journal.getStore();
+    assertEquals(100, store.get("a", -1));
+    assertFalse(store.contains("x"));
+    store.put("b", 200, 1000);
+    store.remove("a");
+    journal.close();
+
+    journal = PositionJournal.open(context, NAME, 8);
+    store = journal.getStore();
+    assertFalse(store.contains("a"));
+    assertEquals(200, store.get("b", -1));
+    journal.close();
+  }
+
+  @Test public void partiallyWrittenRecordIsIgnored() throws IOException {
+    PositionJournal journal = PositionJournal.open(context, NAME, 8);
+    journal.getStore().put("a", 100, 1000);
+    journal.getStore().put("b", 200, 1000);
+    journal.close();
+
+    // Record of "c" written but for its type byte, which commits it
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.seek(HEADER_SIZE + 2 * SHORT_MEDIA_ID_RECORD_SIZE + 1);
+      raf.writeShort(1);
+      raf.writeByte('c');
+      raf.writeLong(300);
+      raf.writeLong(1000);
+    } finally {
+      raf.close();
+    }
+
+    journal = PositionJournal.open(context, NAME, 8);
+    PlaybackPositionStore store = journal.getStore();
+    assertEquals(2, store.size());
+    assertEquals(100, store.get("a", -1));
+    assertEquals(200, store.get("b", -1));
+    assertFalse(store.contains("c"));
+
+    // Next record replaces it
+    store.put("d", 400, 1000);
+    journal.close();
+    journal = PositionJournal.open(context, NAME, 8);
+    store = journal.getStore();
+    assertEquals(3, store.size());
+    assertEquals(400, store.get("d", -1));
+    assertFalse(store.contains("c"));
+    journal.close();
+  }
+
+  @Test public void truncatedFileKeepsItsRecords() throws IOException {
+    PositionJournal journal = PositionJournal.open(context, NAME, 8);
+    journal.getStore().put("a", 100, 1000);
+    journal.getStore().put("b", 200, 1000);
+    journal.close();
+
+    // Eg. copied partially: "b" is lost, the file is shorter than a new one
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(HEADER_SIZE + SHORT_MEDIA_ID_RECORD_SIZE);
+    } finally {
+      raf.close();
+    }
+
+    journal = PositionJournal.open(context, NAME, 8);
+    PlaybackPositionStore store = journal.getStore();
+    assertEquals(1, store.size());
+    assertEquals(100, store.get("a", -1));
+    store.put("c", 300, 1000);
+    journal.close();
+
+    journal = PositionJournal.open(context, NAME, 8);
+    store = journal.getStore();
+    assertEquals(100, store.get("a", -1));
+    assertEquals(300, store.get("c", -1));
+    journal.close();
+  }
+
+  @Test public void compactionKeepsLatestEntriesInRecencyOrder() throws IOException {
+    PositionJournal journal = PositionJournal.open(context, NAME, 4);
+    PlaybackPositionStore store = journal.getStore();
+    // More than 8 records per entry of capacity: compacted once written
+    for (int round = 0; round < 5; round++) {
+      for (long key = 0; key < 10; key++) {
+        store.put(key, round * 100 + key, 1000);
+      }
+    }
+    store.put(3, 999, 1000);
+    journal.close();
+
+    // Only live entries, least recently saved first
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      raf.seek(HEADER_SIZE);
+      assertEquals(PUT_KEY, raf.readByte());
+      assertEquals(7, raf.readLong());
+    } finally {
+      raf.close();
+    }
+
+    journal = PositionJournal.open(context, NAME, 4);
+    store = journal.getStore();
+    assertEquals(4, store.size());
+    assertFalse(store.contains(6));
+    assertEquals(407, store.get(7, -1));
+    assertEquals(408, store.get(8, -1));
+    assertEquals(409, store.get(9, -1));
+    assertEquals(999, store.get(3, -1));
+    journal.close();
+
+    // Smaller store keeps the most recent ones
+    journal = PositionJournal.open(context, NAME, 2);
+    store = journal.getStore();
+    assertEquals(2, store.size());
+    assertFalse(store.contains(8));
+    assertEquals(409, store.get(9, -1));
+    assertEquals(999, store.get(3, -1));
+    journal.close();
+  }
+}